@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.benchmark;
+
+import net.smoofyuniverse.superpiston.api.structure.calculator.DefaultStructureCalculator.MovementReaction;
+import org.spongepowered.api.block.BlockState;
+
+import java.lang.reflect.Proxy;
+
+/**
+ * Blocks available in a {@link BenchmarkWorld}.
+ * Each block is represented by an opaque {@link BlockState} that only supports identity comparisons.
+ */
+public enum BenchmarkBlock {
+	AIR(MovementReaction.NORMAL, false),
+	STONE(MovementReaction.NORMAL, false),
+	OBSIDIAN(MovementReaction.BLOCK, false),
+	TORCH(MovementReaction.DESTROY, false),
+	SLIME(MovementReaction.NORMAL, true),
+	HONEY(MovementReaction.NORMAL, true);
+
+	private static final BenchmarkBlock[] VALUES = values();
+
+	public final MovementReaction reaction;
+	public final boolean sticky;
+	public final BlockState state;
+
+	BenchmarkBlock(MovementReaction reaction, boolean sticky) {
+		this.reaction = reaction;
+		this.sticky = sticky;
+		this.state = (BlockState) Proxy.newProxyInstance(BenchmarkBlock.class.getClassLoader(), new Class<?>[]{BlockState.class, Marker.class},
+				(proxy, method, args) -> switch (method.getName()) {
+					case "ordinal" -> ordinal();
+					case "equals" -> proxy == args[0];
+					case "hashCode" -> System.identityHashCode(proxy);
+					case "toString" -> name();
+					default -> throw new UnsupportedOperationException(method.getName());
+				});
+	}
+
+	public static BenchmarkBlock of(BlockState state) {
+		return VALUES[((Marker) state).ordinal()];
+	}
+
+	public interface Marker {
+		int ordinal();
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.benchmark;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.smoofyuniverse.superpiston.api.structure.PackedPosition;
+import net.smoofyuniverse.superpiston.api.structure.calculator.BlockAccess;
+import org.spongepowered.api.block.BlockState;
+import org.spongepowered.api.util.Direction;
+
+/**
+ * A lightweight in-memory world without border.
+ */
+public class BenchmarkWorld implements BlockAccess {
+	public static final int MIN_Y = -64, MAX_Y = 319;
+
+	private final Long2ObjectOpenHashMap<BlockState> blocks = new Long2ObjectOpenHashMap<>();
+
+	public BenchmarkWorld() {
+		this.blocks.defaultReturnValue(BenchmarkBlock.AIR.state);
+	}
+
+	public void set(int x, int y, int z, BenchmarkBlock block) {
+		this.blocks.put(PackedPosition.pack(x, y, z), block.state);
+	}
+
+	@Override
+	public BlockState block(int x, int y, int z) {
+		return this.blocks.get(PackedPosition.pack(x, y, z));
+	}
+
+	@Override
+	public boolean isBlocked(int x, int y, int z, Direction movement) {
+		return y < MIN_Y || y > MAX_Y || (movement == Direction.DOWN && y == MIN_Y) || (movement == Direction.UP && y == MAX_Y);
+	}
+}
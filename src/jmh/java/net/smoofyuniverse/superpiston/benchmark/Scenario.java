@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.benchmark;
+
+/**
+ * Block layouts placed in front of a piston at (0, 64, 0) facing east.
+ * Each layout fits in the given maximum number of blocks so the whole structure is always calculated.
+ */
+public enum Scenario {
+	/**
+	 * A straight line of stone.
+	 */
+	LINE {
+		@Override
+		public void build(BenchmarkWorld world, int maxBlocks) {
+			for (int x = 1; x <= maxBlocks; x++)
+				world.set(x, 64, 0, BenchmarkBlock.STONE);
+		}
+	},
+	/**
+	 * A square wall of slime facing the piston.
+	 */
+	SLIME_WALL {
+		@Override
+		public void build(BenchmarkWorld world, int maxBlocks) {
+			int size = (int) Math.sqrt(maxBlocks);
+			for (int y = 0; y < size; y++) {
+				for (int z = 0; z < size; z++)
+					world.set(1, 64 + y, z, BenchmarkBlock.SLIME);
+			}
+		}
+	},
+	/**
+	 * A cube of alternating slime and honey layers, causing many collisions.
+	 */
+	INTERLOCK {
+		@Override
+		public void build(BenchmarkWorld world, int maxBlocks) {
+			int size = (int) Math.cbrt(maxBlocks);
+			for (int x = 0; x < size; x++) {
+				BenchmarkBlock block = x % 2 == 0 ? BenchmarkBlock.SLIME : BenchmarkBlock.HONEY;
+				for (int y = 0; y < size; y++) {
+					for (int z = 0; z < size; z++)
+						world.set(1 + x, 64 + y, z, block);
+				}
+			}
+		}
+	},
+	/**
+	 * A horizontal slime deck carrying stone on every other block.
+	 */
+	FLYING_MACHINE {
+		@Override
+		public void build(BenchmarkWorld world, int maxBlocks) {
+			int size = (int) Math.sqrt(maxBlocks / 1.5);
+			for (int x = 0; x < size; x++) {
+				for (int z = 0; z < size; z++) {
+					world.set(1 + x, 64, z, BenchmarkBlock.SLIME);
+					if ((x + z) % 2 == 0)
+						world.set(1 + x, 65, z, BenchmarkBlock.STONE);
+				}
+			}
+		}
+	};
+
+	public abstract void build(BenchmarkWorld world, int maxBlocks);
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.benchmark;
+
+import net.smoofyuniverse.superpiston.api.structure.PistonStructure;
+import net.smoofyuniverse.superpiston.api.structure.calculator.DefaultStructureCalculator;
+import net.smoofyuniverse.superpiston.api.structure.calculator.DefaultStructureCalculator.MovementReaction;
+import net.smoofyuniverse.superpiston.api.structure.calculator.PackedStructureCalculator;
+import net.smoofyuniverse.superpiston.api.structure.calculator.PistonStructureCalculator;
+import net.smoofyuniverse.superpiston.config.world.WorldConfig;
+import net.smoofyuniverse.superpiston.config.world.WorldConfig.Resolved;
+import net.smoofyuniverse.superpiston.impl.calculator.SuperPistonStructureCalculator;
+import org.openjdk.jmh.annotations.*;
+import org.spongepowered.api.block.BlockState;
+import org.spongepowered.api.util.Direction;
+import org.spongepowered.math.vector.Vector3i;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how structure calculation scales with the maximum number of blocks, the sticky density and the number of collisions.
+ * The packed calculator is the engine of SuperPistonStructureCalculator,
+ * its hooks are backed by arrays like the config tables of the plugin.
+ * The super piston calculator is the one running on servers, driven by a resolved config declaring every benchmark block.
+ * Its config has no tables since they are indexed by the ids of Minecraft block states,
+ * so it measures the lookups of the config rules used for the states missing from the tables.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StructureCalculationBenchmark {
+	private static final Vector3i PISTON = new Vector3i(0, 64, 0);
+
+	@Param({"LINE", "SLIME_WALL", "INTERLOCK", "FLYING_MACHINE"})
+	public Scenario scenario;
+	@Param({"12", "100", "500"})
+	public int maxBlocks;
+	@Param({"DEFAULT", "PACKED", "SUPER_PISTON"})
+	public CalculatorType calculator;
+
+	private BenchmarkWorld world;
+	private Resolved config;
+
+	@Setup
+	public void setup() {
+		this.world = new BenchmarkWorld();
+		this.scenario.build(this.world, this.maxBlocks);
+		this.config = resolveConfig(this.maxBlocks);
+
+		PistonStructure structure = this.calculator.create(this.world, this.config).calculateStructure();
+		if (!structure.isMoveable())
+			throw new IllegalStateException("Scenario " + this.scenario + " is not moveable");
+	}
+
+	@Benchmark
+	public PistonStructure calculate() {
+		return this.calculator.create(this.world, this.config).calculateStructure();
+	}
+
+	private static Resolved resolveConfig(int maxBlocks) {
+		WorldConfig config = new WorldConfig();
+		config.maxBlocks = maxBlocks;
+
+		// Every state is declared so the rules never fall back to the Minecraft defaults
+		Map<BlockState, MovementReaction> reactions = new HashMap<>();
+		Map<BlockState, Boolean> stickyBlocks = new HashMap<>();
+		Map<BlockState, String> stickyGroups = new HashMap<>();
+		for (BenchmarkBlock block : BenchmarkBlock.values()) {
+			reactions.put(block.state, block.reaction);
+			stickyBlocks.put(block.state, block.sticky);
+			if (block.sticky)
+				stickyGroups.put(block.state, block.name());
+		}
+		return new Resolved(config, reactions, stickyBlocks, stickyGroups, Map.of());
+	}
+
+	public enum CalculatorType {
+		DEFAULT {
+			@Override
+			public PistonStructureCalculator create(BenchmarkWorld world, Resolved config) {
+				return new BenchmarkDefaultCalculator(world, config.maxBlocks);
+			}
+		},
+		PACKED {
+			@Override
+			public PistonStructureCalculator create(BenchmarkWorld world, Resolved config) {
+				return new BenchmarkPackedCalculator(world, config.maxBlocks);
+			}
+		},
+		SUPER_PISTON {
+			@Override
+			public PistonStructureCalculator create(BenchmarkWorld world, Resolved config) {
+				return new BenchmarkSuperPistonCalculator(world, config);
+			}
+		};
+
+		public abstract PistonStructureCalculator create(BenchmarkWorld world, Resolved config);
+	}
+
+	private static final class BenchmarkDefaultCalculator extends DefaultStructureCalculator {
+		BenchmarkDefaultCalculator(BenchmarkWorld world, int maxBlocks) {
+			super(null, world, PISTON, Direction.EAST, Direction.EAST);
+			this.maxBlocks = maxBlocks;
+		}
+
+		@Override
+		protected boolean isAir(BlockState state) {
+			return state == BenchmarkBlock.AIR.state;
+		}
+
+		@Override
+		public boolean isSticky(BlockState state, Vector3i pos) {
+			return BenchmarkBlock.of(state).sticky;
+		}
+
+		@Override
+		public boolean canStickToEachOther(BlockState state1, Vector3i pos1, BlockState state2, Vector3i pos2) {
+			boolean sticky1 = isSticky(state1, pos1);
+			boolean sticky2 = isSticky(state2, pos2);
+			if (sticky1 && sticky2)
+				return state1 == state2;
+			return sticky1 || sticky2;
+		}
+
+		@Override
+		public MovementReaction getReaction(BlockState state, Vector3i pos) {
+			return BenchmarkBlock.of(state).reaction;
+		}
+	}
+
+	private static final class BenchmarkPackedCalculator extends PackedStructureCalculator {
+		BenchmarkPackedCalculator(BenchmarkWorld world, int maxBlocks) {
+			super(null, world, PISTON, Direction.EAST, Direction.EAST);
+			this.maxBlocks = maxBlocks;
+		}
+
+		@Override
+		protected boolean isAir(BlockState state) {
+			return state == BenchmarkBlock.AIR.state;
+		}
+
+		@Override
+		public boolean isSticky(BlockState state, long pos) {
+			return BenchmarkBlock.of(state).sticky;
+		}
+
+		@Override
+		public boolean canStickToEachOther(BlockState state1, long pos1, BlockState state2, long pos2) {
+			boolean sticky1 = isSticky(state1, pos1);
+			boolean sticky2 = isSticky(state2, pos2);
+			if (sticky1 && sticky2)
+				return state1 == state2;
+			return sticky1 || sticky2;
+		}
+
+		@Override
+		public MovementReaction getReaction(BlockState state, long pos) {
+			return BenchmarkBlock.of(state).reaction;
+		}
+	}
+
+	private static final class BenchmarkSuperPistonCalculator extends SuperPistonStructureCalculator {
+		BenchmarkSuperPistonCalculator(BenchmarkWorld world, Resolved config) {
+			super(null, world, PISTON, Direction.EAST, Direction.EAST, config);
+		}
+
+		@Override
+		protected boolean isAir(BlockState state) {
+			return state == BenchmarkBlock.AIR.state;
+		}
+	}
+}
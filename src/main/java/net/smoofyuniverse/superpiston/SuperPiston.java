@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2018-2024 Hugo Dupanloup (Yeregorix)
+ * Copyright (c) 2018-2026 Hugo Dupanloup (Yeregorix)
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -24,21 +24,32 @@ package net.smoofyuniverse.superpiston;
 
 import com.google.inject.Inject;
 import net.smoofyuniverse.map.WorldMap;
-import net.smoofyuniverse.map.WorldMapLoader;
 import net.smoofyuniverse.ore.update.UpdateChecker;
+import net.smoofyuniverse.superpiston.command.SuperPistonCommand;
+import net.smoofyuniverse.superpiston.config.global.GlobalConfig;
 import net.smoofyuniverse.superpiston.config.world.WorldConfig;
 import net.smoofyuniverse.superpiston.config.world.WorldConfig.Resolved;
+import net.smoofyuniverse.superpiston.config.world.WorldConfigLoader;
 import net.smoofyuniverse.superpiston.event.PistonListener;
+import net.smoofyuniverse.superpiston.impl.event.ListenerDetector;
+import net.smoofyuniverse.superpiston.impl.metrics.MetricsReport;
+import net.smoofyuniverse.superpiston.impl.metrics.SlowResolveSampler;
+import net.smoofyuniverse.superpiston.util.RegistryUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.spongepowered.api.Game;
 import org.spongepowered.api.Server;
+import org.spongepowered.api.command.Command;
 import org.spongepowered.api.config.ConfigDir;
 import org.spongepowered.api.event.Listener;
 import org.spongepowered.api.event.lifecycle.ConstructPluginEvent;
 import org.spongepowered.api.event.lifecycle.RefreshGameEvent;
+import org.spongepowered.api.event.lifecycle.RegisterCommandEvent;
 import org.spongepowered.api.event.lifecycle.StartedEngineEvent;
 import org.spongepowered.api.event.lifecycle.StartingEngineEvent;
+import org.spongepowered.api.event.lifecycle.StoppingEngineEvent;
+import org.spongepowered.api.scheduler.ScheduledTask;
+import org.spongepowered.api.scheduler.Task;
 import org.spongepowered.api.world.server.ServerWorld;
 import org.spongepowered.configurate.CommentedConfigurationNode;
 import org.spongepowered.configurate.ConfigurationOptions;
@@ -50,10 +61,15 @@ import org.spongepowered.plugin.builtin.jvm.Plugin;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
 
 @Plugin("superpiston")
 public class SuperPiston {
 	public static final Logger LOGGER = LogManager.getLogger("SuperPiston");
+	private static final DateTimeFormatter TRACE_FILE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
 	private static SuperPiston instance;
 
 	@Inject
@@ -66,8 +82,15 @@ public class SuperPiston {
 
 	private ConfigurationOptions configOptions;
 
-	private WorldMapLoader<Resolved> configMapLoader;
-	private WorldMap<Resolved> configMap;
+	private WorldConfigLoader configMapLoader;
+	private volatile WorldMap<Resolved> configMap;
+	private CompletableFuture<Void> configReload = CompletableFuture.completedFuture(null);
+	private GlobalConfig globalConfig = new GlobalConfig();
+	private SlowResolveSampler slowResolveSampler;
+	private ListenerDetector listenerDetector;
+
+	private ScheduledTask metricsTask;
+	private long lastLoggedResolves;
 
 	public SuperPiston() {
 		if (instance != null)
@@ -84,14 +107,8 @@ public class SuperPiston {
 		} catch (IOException ignored) {
 		}
 
-		this.configMapLoader = new WorldMapLoader<Resolved>(LOGGER,
-				createConfigLoader(this.configDir.resolve("map.conf")),
-				this.configDir.resolve("configs"), WorldConfig.VANILLA) {
-			@Override
-			protected Resolved loadConfig(Path file) throws Exception {
-				return WorldConfig.load(file).resolve();
-			}
-		};
+		this.configMapLoader = new WorldConfigLoader(LOGGER,
+				createConfigLoader(this.configDir.resolve("map.conf")), this.configDir.resolve("configs"));
 	}
 
 	public ConfigurationLoader<CommentedConfigurationNode> createConfigLoader(Path file) {
@@ -100,21 +117,110 @@ public class SuperPiston {
 
 	@Listener
 	public void onServerStarting(StartingEngineEvent<Server> e) {
-		loadConfigs();
+		loadConfigs(false);
 
 		this.game.eventManager().registerListeners(this.container, new PistonListener(this));
+		this.listenerDetector = new ListenerDetector(this.container);
 
 		this.game.eventManager().registerListeners(this.container, new UpdateChecker(LOGGER, this.container,
 				createConfigLoader(this.configDir.resolve("update.conf")), "Yeregorix", "SuperPiston"));
 	}
 
-	private void loadConfigs() {
-		this.configMap = this.configMapLoader.load();
+	private void loadConfigs(boolean async) {
+		try {
+			this.globalConfig = GlobalConfig.load(this.configDir.resolve("global.conf"));
+		} catch (Exception e) {
+			LOGGER.error("Failed to load global configuration", e);
+		}
+
+		scheduleMetricsLog();
+		updateSlowResolveSampler();
+
+		if (!async) {
+			this.configMap = loadWorldConfigs();
+			return;
+		}
+
+		// Resolved off the server thread then swapped on it, reloads are queued
+		this.configReload = this.configReload.thenApplyAsync(v -> loadWorldConfigs(), this.game.asyncScheduler().executor(this.container))
+				.thenAcceptAsync(map -> this.configMap = map, this.game.server().scheduler().executor(this.container))
+				.exceptionally(t -> {
+					LOGGER.error("Failed to reload world configurations", t);
+					return null;
+				});
+	}
+
+	private WorldMap<Resolved> loadWorldConfigs() {
+		WorldConfig.VANILLA.rebuildTables();
+		WorldMap<Resolved> map = this.configMapLoader.loadChanged();
+		WorldConfig.clearCache();
+		RegistryUtil.clearCache();
+
+		LOGGER.info("Loaded {} world configuration(s), {} unchanged.", this.configMapLoader.getLoadedCount(), this.configMapLoader.getReusedCount());
+		return map;
+	}
+
+	private void updateSlowResolveSampler() {
+		GlobalConfig.Tracing tracing = this.globalConfig.tracing;
+		if (!tracing.enabled) {
+			this.slowResolveSampler = null;
+			return;
+		}
+
+		long thresholdNanos = tracing.threshold * 1000;
+		SlowResolveSampler sampler = this.slowResolveSampler;
+		if (sampler == null || sampler.getThresholdNanos() != thresholdNanos || sampler.getCapacity() != tracing.bufferSize)
+			this.slowResolveSampler = new SlowResolveSampler(thresholdNanos, tracing.bufferSize);
+	}
+
+	/**
+	 * Dumps the slow resolves to a new file in the traces directory.
+	 *
+	 * @return The file, or null if tracing is disabled.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public Path dumpSlowResolves() throws IOException {
+		SlowResolveSampler sampler = this.slowResolveSampler;
+		if (sampler == null)
+			return null;
+
+		Path file = this.configDir.resolve("traces").resolve("slow-resolves-" + LocalDateTime.now().format(TRACE_FILE_FORMAT) + ".tsv");
+		sampler.dump(file);
+		return file;
+	}
+
+	private void scheduleMetricsLog() {
+		if (this.metricsTask != null) {
+			this.metricsTask.cancel();
+			this.metricsTask = null;
+		}
+
+		GlobalConfig.Metrics metrics = this.globalConfig.metrics;
+		if (metrics.enabled && metrics.logInterval > 0) {
+			Duration interval = Duration.ofMinutes(metrics.logInterval);
+			this.metricsTask = this.game.server().scheduler().submit(Task.builder()
+					.plugin(this.container).delay(interval).interval(interval).execute(this::logMetrics).build());
+		}
+	}
+
+	private void logMetrics() {
+		long resolves = MetricsReport.total().resolves();
+		if (resolves == this.lastLoggedResolves)
+			return;
+		this.lastLoggedResolves = resolves;
+
+		for (String line : MetricsReport.lines())
+			LOGGER.info(line);
+	}
+
+	@Listener
+	public void onRegisterCommands(RegisterCommandEvent<Command.Parameterized> e) {
+		e.register(this.container, SuperPistonCommand.create(), "superpiston");
 	}
 
 	@Listener
 	public void onRefreshGame(RefreshGameEvent e) {
-		loadConfigs();
+		loadConfigs(true);
 	}
 
 	@Listener
@@ -122,6 +228,26 @@ public class SuperPiston {
 		LOGGER.info("SuperPiston {} was loaded successfully.", this.container.metadata().version());
 	}
 
+	@Listener
+	public void onServerStopping(StoppingEngineEvent<Server> e) {
+		if (this.metricsTask != null) {
+			this.metricsTask.cancel();
+			this.metricsTask = null;
+		}
+	}
+
+	public GlobalConfig getGlobalConfig() {
+		return this.globalConfig;
+	}
+
+	public SlowResolveSampler getSlowResolveSampler() {
+		return this.slowResolveSampler;
+	}
+
+	public ListenerDetector getListenerDetector() {
+		return this.listenerDetector;
+	}
+
 	public Resolved getConfig(ServerWorld world) {
 		return this.configMap.get(world.properties());
 	}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.api.structure;
+
+import org.spongepowered.api.util.Direction;
+import org.spongepowered.math.vector.Vector3i;
+
+/**
+ * Utility methods to pack block positions into a single long.
+ * The layout is the same as the one used by Minecraft (26 bits for X, 26 bits for Z and 12 bits for Y).
+ */
+public final class PackedPosition {
+	private static final int X_LENGTH = 26, Z_LENGTH = 26, Y_LENGTH = 12;
+	private static final long X_MASK = (1L << X_LENGTH) - 1L, Y_MASK = (1L << Y_LENGTH) - 1L, Z_MASK = (1L << Z_LENGTH) - 1L;
+	private static final int Z_OFFSET = Y_LENGTH, X_OFFSET = Y_LENGTH + Z_LENGTH;
+
+	/**
+	 * Packs a block position into a long.
+	 *
+	 * @param x The X coordinate.
+	 * @param y The Y coordinate.
+	 * @param z The Z coordinate.
+	 * @return The packed position.
+	 */
+	public static long pack(int x, int y, int z) {
+		return ((x & X_MASK) << X_OFFSET) | (y & Y_MASK) | ((z & Z_MASK) << Z_OFFSET);
+	}
+
+	public static long pack(Vector3i pos) {
+		return pack(pos.x(), pos.y(), pos.z());
+	}
+
+	public static int x(long pos) {
+		return (int) (pos >> X_OFFSET);
+	}
+
+	public static int y(long pos) {
+		return (int) (pos << (64 - Y_LENGTH) >> (64 - Y_LENGTH));
+	}
+
+	public static int z(long pos) {
+		return (int) (pos << (64 - X_OFFSET) >> (64 - Z_LENGTH));
+	}
+
+	/**
+	 * Unpacks a packed position into a vector.
+	 *
+	 * @param pos The packed position.
+	 * @return The position.
+	 */
+	public static Vector3i unpack(long pos) {
+		return new Vector3i(x(pos), y(pos), z(pos));
+	}
+
+	public static long offset(long pos, int dx, int dy, int dz) {
+		return pack(x(pos) + dx, y(pos) + dy, z(pos) + dz);
+	}
+
+	/**
+	 * Offsets a packed position in the given direction.
+	 *
+	 * @param pos      The packed position.
+	 * @param dir      The direction.
+	 * @param distance The distance.
+	 * @return The offset packed position.
+	 */
+	public static long offset(long pos, Direction dir, int distance) {
+		Vector3i offset = dir.asBlockOffset();
+		return offset(pos, offset.x() * distance, offset.y() * distance, offset.z() * distance);
+	}
+
+	public static long offset(long pos, Direction dir) {
+		return offset(pos, dir, 1);
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2018-2022 Hugo Dupanloup (Yeregorix)
+ * Copyright (c) 2018-2026 Hugo Dupanloup (Yeregorix)
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -25,14 +25,21 @@ package net.smoofyuniverse.superpiston.api.structure;
 import com.google.common.collect.ImmutableList;
 import org.spongepowered.math.vector.Vector3i;
 
+import java.util.AbstractList;
 import java.util.Collection;
 import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * This immutable object represents blocks that will be moved or destroyed by a piston movement.
  * If the structure is not moveable then the piston can't move and no blocks will be affected.
+ * A structure can be backed by positions packed into longs (see {@link PackedPosition}),
+ * in which case the lists of vectors are views creating each vector on access.
  */
 public final class PistonStructure {
+	private static final long[] EMPTY = new long[0];
+
+	private final long[] packedToMove, packedToDestroy;
 	private final List<Vector3i> blocksToMove, blocksToDestroy;
 	private final boolean moveable;
 
@@ -45,6 +52,8 @@ public final class PistonStructure {
 	public PistonStructure(Collection<Vector3i> blocksToMove, Collection<Vector3i> blocksToDestroy) {
 		this.blocksToMove = ImmutableList.copyOf(blocksToMove);
 		this.blocksToDestroy = ImmutableList.copyOf(blocksToDestroy);
+		this.packedToMove = null;
+		this.packedToDestroy = null;
 		this.moveable = true;
 	}
 
@@ -56,9 +65,33 @@ public final class PistonStructure {
 	public PistonStructure(boolean moveable) {
 		this.blocksToMove = ImmutableList.of();
 		this.blocksToDestroy = ImmutableList.of();
+		this.packedToMove = EMPTY;
+		this.packedToDestroy = EMPTY;
 		this.moveable = moveable;
 	}
 
+	private PistonStructure(long[] blocksToMove, long[] blocksToDestroy) {
+		this.blocksToMove = new PackedList(blocksToMove);
+		this.blocksToDestroy = new PackedList(blocksToDestroy);
+		this.packedToMove = blocksToMove;
+		this.packedToDestroy = blocksToDestroy;
+		this.moveable = true;
+	}
+
+	/**
+	 * Constructs a moveable structure backed by packed positions.
+	 * The structure takes ownership of the arrays: they are not copied, so the caller must not modify them afterward.
+	 *
+	 * @param blocksToMove    The packed positions of the blocks that will be moved.
+	 * @param blocksToDestroy The packed positions of the blocks that will be destroyed.
+	 * @return The structure.
+	 */
+	public static PistonStructure packed(long[] blocksToMove, long[] blocksToDestroy) {
+		if (blocksToMove == null || blocksToDestroy == null)
+			throw new IllegalArgumentException();
+		return new PistonStructure(blocksToMove, blocksToDestroy);
+	}
+
 	/**
 	 * @return The list of blocks that will be moved.
 	 */
@@ -73,10 +106,62 @@ public final class PistonStructure {
 		return this.blocksToDestroy;
 	}
 
+	/**
+	 * @return The number of blocks that will be moved.
+	 */
+	public int getBlocksToMoveCount() {
+		return this.packedToMove != null ? this.packedToMove.length : this.blocksToMove.size();
+	}
+
+	/**
+	 * @return The number of blocks that will be destroyed.
+	 */
+	public int getBlocksToDestroyCount() {
+		return this.packedToDestroy != null ? this.packedToDestroy.length : this.blocksToDestroy.size();
+	}
+
+	/**
+	 * Gets the packed position of a block that will be moved without creating a vector if possible.
+	 *
+	 * @param index The index of the block.
+	 * @return The packed position.
+	 */
+	public long getPackedBlockToMove(int index) {
+		return this.packedToMove != null ? this.packedToMove[index] : PackedPosition.pack(this.blocksToMove.get(index));
+	}
+
+	/**
+	 * Gets the packed position of a block that will be destroyed without creating a vector if possible.
+	 *
+	 * @param index The index of the block.
+	 * @return The packed position.
+	 */
+	public long getPackedBlockToDestroy(int index) {
+		return this.packedToDestroy != null ? this.packedToDestroy[index] : PackedPosition.pack(this.blocksToDestroy.get(index));
+	}
+
 	/**
 	 * @return Whether this structure is moveable or not.
 	 */
 	public boolean isMoveable() {
 		return this.moveable;
 	}
+
+	private static final class PackedList extends AbstractList<Vector3i> implements RandomAccess {
+		private final long[] positions;
+
+		PackedList(long[] positions) {
+			this.positions = positions;
+		}
+
+		@Override
+		public Vector3i get(int index) {
+			return PackedPosition.unpack(this.positions[index]);
+		}
+
+		@Override
+		public int size() {
+			return this.positions.length;
+		}
+	}
 }
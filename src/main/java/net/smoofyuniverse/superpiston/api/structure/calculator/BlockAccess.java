@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.api.structure.calculator;
+
+import org.spongepowered.api.block.BlockState;
+import org.spongepowered.api.util.Direction;
+
+/**
+ * Read-only access to the blocks used by a {@link DefaultStructureCalculator}.
+ * Implementations may read the live world, a cached view of it or a captured snapshot.
+ */
+public interface BlockAccess {
+
+	/**
+	 * Gets the block state at the given position.
+	 *
+	 * @param x The X coordinate.
+	 * @param y The Y coordinate.
+	 * @param z The Z coordinate.
+	 * @return The block state.
+	 */
+	BlockState block(int x, int y, int z);
+
+	/**
+	 * Gets whether a block at the given position cannot be moved in the given direction
+	 * because it is outside the world border or the build height.
+	 *
+	 * @param x        The X coordinate.
+	 * @param y        The Y coordinate.
+	 * @param z        The Z coordinate.
+	 * @param movement The direction of the movement.
+	 * @return Whether the position is blocked.
+	 */
+	boolean isBlocked(int x, int y, int z, Direction movement);
+}
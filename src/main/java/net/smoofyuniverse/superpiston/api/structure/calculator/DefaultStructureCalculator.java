@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2018-2024 Hugo Dupanloup (Yeregorix)
+ * Copyright (c) 2018-2026 Hugo Dupanloup (Yeregorix)
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -22,20 +22,20 @@
 
 package net.smoofyuniverse.superpiston.api.structure.calculator;
 
-import com.google.common.collect.ImmutableList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import net.smoofyuniverse.superpiston.api.structure.PistonStructure;
 import net.smoofyuniverse.superpiston.impl.BlockUtil;
 import net.smoofyuniverse.superpiston.impl.ReactionUtil;
+import net.smoofyuniverse.superpiston.impl.access.LevelBlockAccess;
 import org.spongepowered.api.block.BlockSnapshot;
 import org.spongepowered.api.block.BlockState;
-import org.spongepowered.api.block.BlockType;
-import org.spongepowered.api.block.BlockTypes;
 import org.spongepowered.api.util.Direction;
 import org.spongepowered.api.world.server.ServerWorld;
 import org.spongepowered.math.vector.Vector3i;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -44,29 +44,107 @@ import java.util.Set;
  */
 public class DefaultStructureCalculator implements PistonStructureCalculator {
 	private static final Direction[] CARDINALS = {Direction.DOWN, Direction.UP, Direction.NORTH, Direction.SOUTH, Direction.WEST, Direction.EAST};
-	private static final List<BlockType> STICKY_BLOCKS = ImmutableList.of(BlockTypes.SLIME_BLOCK.get(), BlockTypes.HONEY_BLOCK.get());
 
-	protected final ServerWorld world;
-	protected final BlockSnapshot piston;
-	protected final Direction direction, movement;
+	protected ServerWorld world;
+	protected BlockAccess access;
+	/**
+	 * The snapshot of the piston, null until {@link #getPiston()} is called if this calculator was created from a position only.
+	 */
+	protected BlockSnapshot piston;
+	protected Vector3i pistonPosition;
+	protected Direction direction, movement;
 
-	protected final Direction[] sides;
-	protected final boolean extending;
+	protected final Direction[] sides = new Direction[4];
+	protected boolean extending;
 
 	protected List<Vector3i> toMove, toDestroy;
+	protected Object2IntMap<Vector3i> toMoveIndex;
+	/**
+	 * @deprecated Read-only view of the keys of {@link #toMoveIndex}, kept for subclasses.
+	 */
+	@Deprecated
 	protected Set<Vector3i> toMoveSet;
 	protected int maxBlocks = 12;
 
 	public DefaultStructureCalculator(ServerWorld world, BlockSnapshot piston, Direction direction, Direction movement) {
+		this(world, new LevelBlockAccess(world), piston, direction, movement);
+	}
+
+	/**
+	 * Creates a calculator reading blocks through the given access.
+	 * The world is only exposed to subclasses and may be null if the access does not depend on it.
+	 *
+	 * @param world     The world.
+	 * @param access    The block access.
+	 * @param piston    The piston.
+	 * @param direction The direction of the piston.
+	 * @param movement  The direction of the movement.
+	 */
+	public DefaultStructureCalculator(ServerWorld world, BlockAccess access, BlockSnapshot piston, Direction direction, Direction movement) {
+		if (piston == null)
+			throw new IllegalArgumentException("piston");
+		init(world, access, piston, piston.position(), direction, movement);
+	}
+
+	/**
+	 * Creates a calculator from the position of the piston only.
+	 * The snapshot of the piston is created on first access, see {@link #getPiston()}, which requires a world.
+	 *
+	 * @param world          The world.
+	 * @param access         The block access.
+	 * @param pistonPosition The position of the piston.
+	 * @param direction      The direction of the piston.
+	 * @param movement       The direction of the movement.
+	 */
+	public DefaultStructureCalculator(ServerWorld world, BlockAccess access, Vector3i pistonPosition, Direction direction, Direction movement) {
+		init(world, access, null, pistonPosition, direction, movement);
+	}
+
+	/**
+	 * Prepares this calculator for another piston so it can be reused instead of creating a new one.
+	 * The results of the previous calculation must no longer be used.
+	 *
+	 * @param world     The world.
+	 * @param access    The block access.
+	 * @param piston    The piston.
+	 * @param direction The direction of the piston.
+	 * @param movement  The direction of the movement.
+	 */
+	public void reset(ServerWorld world, BlockAccess access, BlockSnapshot piston, Direction direction, Direction movement) {
+		if (piston == null)
+			throw new IllegalArgumentException("piston");
+		init(world, access, piston, piston.position(), direction, movement);
+	}
+
+	/**
+	 * Prepares this calculator for another piston, known by its position only.
+	 *
+	 * @param world          The world.
+	 * @param access         The block access.
+	 * @param pistonPosition The position of the piston.
+	 * @param direction      The direction of the piston.
+	 * @param movement       The direction of the movement.
+	 * @see #reset(ServerWorld, BlockAccess, BlockSnapshot, Direction, Direction)
+	 */
+	public void reset(ServerWorld world, BlockAccess access, Vector3i pistonPosition, Direction direction, Direction movement) {
+		init(world, access, null, pistonPosition, direction, movement);
+	}
+
+	private void init(ServerWorld world, BlockAccess access, BlockSnapshot piston, Vector3i pistonPosition, Direction direction, Direction movement) {
+		if (access == null)
+			throw new IllegalArgumentException("access");
+		if (pistonPosition == null)
+			throw new IllegalArgumentException("pistonPosition");
 		if (direction != movement && direction != movement.opposite())
 			throw new IllegalArgumentException("movement");
 
 		this.world = world;
+		this.access = access;
 		this.piston = piston;
+		this.pistonPosition = pistonPosition;
 		this.direction = direction;
 		this.movement = movement;
 
-		this.sides = new Direction[4];
 		int i = 0;
 		for (Direction dir : CARDINALS) {
 			if (dir == movement)
@@ -80,18 +158,47 @@ public class DefaultStructureCalculator implements PistonStructureCalculator {
 		this.extending = direction == movement;
 	}
 
+	public int getMaxBlocks() {
+		return this.maxBlocks;
+	}
+
+	public void setMaxBlocks(int value) {
+		if (value < 1)
+			throw new IllegalArgumentException("value");
+		this.maxBlocks = value;
+	}
+
+	/**
+	 * Gets the snapshot of the piston.
+	 * If this calculator was created from a position only, the snapshot is created on first access.
+	 *
+	 * @return The piston.
+	 * @throws IllegalStateException if the snapshot must be created but this calculator has no world.
+	 */
+	public BlockSnapshot getPiston() {
+		if (this.piston == null) {
+			if (this.world == null)
+				throw new IllegalStateException("Cannot create the snapshot of the piston without a world");
+			this.piston = this.world.createSnapshot(this.pistonPosition);
+		}
+		return this.piston;
+	}
+
 	@Override
 	public PistonStructure calculateStructure() {
 		this.toMove = new ArrayList<>(this.maxBlocks);
 		this.toDestroy = new ArrayList<>();
-		this.toMoveSet = new HashSet<>();
+		this.toMoveIndex = new Object2IntOpenHashMap<>(this.maxBlocks);
+		this.toMoveIndex.defaultReturnValue(-1);
+		this.toMoveSet = Collections.unmodifiableSet(this.toMoveIndex.keySet());
 
 		Vector3i offset = this.direction.asBlockOffset();
-		boolean moveable = calculate(this.piston.position().add(this.extending ? offset : offset.mul(2)));
+		boolean moveable = calculate(this.pistonPosition.add(this.extending ? offset : offset.mul(2)));
 
 		PistonStructure structure = moveable ? new PistonStructure(this.toMove, this.toDestroy) : new PistonStructure(false);
 		this.toMove = null;
 		this.toDestroy = null;
+		this.toMoveIndex = null;
 		this.toMoveSet = null;
 		return structure;
 	}
@@ -101,7 +208,7 @@ public class DefaultStructureCalculator implements PistonStructureCalculator {
 		if (isPositionBlocked(origin))
 			return false;
 
-		BlockState state = this.world.block(origin);
+		BlockState state = block(origin);
 		MovementReaction reaction = getReaction(state, origin);
 
 		if (reaction == MovementReaction.DESTROY) {
@@ -117,7 +224,7 @@ public class DefaultStructureCalculator implements PistonStructureCalculator {
 
 		for (int i = 0; i < this.toMove.size(); ++i) {
 			Vector3i pos = this.toMove.get(i);
-			if (isSticky(this.world.block(pos), pos) && !addBranchingBlocks(pos))
+			if (isSticky(block(pos), pos) && !addBranchingBlocks(pos))
 				return false;
 		}
 
@@ -125,15 +232,15 @@ public class DefaultStructureCalculator implements PistonStructureCalculator {
 	}
 
 	protected boolean addBlockLine(Vector3i origin, Direction dir) {
-		if (this.toMoveSet.contains(origin))
+		if (this.toMoveIndex.containsKey(origin))
 			return true;
 
-		if (this.piston.position().equals(origin) || isPositionBlocked(origin))
+		if (this.pistonPosition.equals(origin) || isPositionBlocked(origin))
 			return true;
 
-		BlockState state = this.world.block(origin);
+		BlockState state = block(origin);
 
-		if (BlockUtil.isAir(state))
+		if (isAir(state))
 			return true;
 
 		MovementReaction reaction = getReaction(state, origin);
@@ -141,7 +248,7 @@ public class DefaultStructureCalculator implements PistonStructureCalculator {
 			return true;
 
 		int i = 1;
-		if (i + this.toMoveSet.size() > this.maxBlocks)
+		if (i + this.toMoveIndex.size() > this.maxBlocks)
 			return false;
 
 		Vector3i offset = this.movement.asBlockOffset();
@@ -153,12 +260,12 @@ public class DefaultStructureCalculator implements PistonStructureCalculator {
 
 			pos = pos.sub(offset);
 
-			if (this.piston.position().equals(pos) || isPositionBlocked(pos))
+			if (this.pistonPosition.equals(pos) || isPositionBlocked(pos))
 				break;
 
-			state = this.world.block(pos);
+			state = block(pos);
 
-			if (BlockUtil.isAir(state))
+			if (isAir(state))
 				break;
 
 			if (!canStickToEachOther(prevState, prevPos, state, pos))
@@ -168,7 +275,7 @@ public class DefaultStructureCalculator implements PistonStructureCalculator {
 				break;
 
 			i++;
-			if (i + this.toMoveSet.size() > this.maxBlocks)
+			if (i + this.toMoveIndex.size() > this.maxBlocks)
 				return false;
 		}
 
@@ -176,8 +283,8 @@ public class DefaultStructureCalculator implements PistonStructureCalculator {
 		for (int j = i - 1; j >= 0; --j) {
 			pos = origin.sub(offset.mul(j));
 
+			this.toMoveIndex.put(pos, this.toMove.size());
 			this.toMove.add(pos);
-			this.toMoveSet.add(pos);
 			m++;
 		}
 
@@ -185,25 +292,25 @@ public class DefaultStructureCalculator implements PistonStructureCalculator {
 		while (true) {
 			pos = pos.add(offset);
 
-			int k = this.toMove.indexOf(pos);
+			int k = this.toMoveIndex.getInt(pos);
 			if (k > -1) {
 				reorderListAtCollision(m, k);
 
 				for (int l = 0; l <= k + m; ++l) {
 					Vector3i pos2 = this.toMove.get(l);
-					if (isSticky(this.world.block(pos2), pos2) && !addBranchingBlocks(pos2))
+					if (isSticky(block(pos2), pos2) && !addBranchingBlocks(pos2))
 						return false;
 				}
 
 				return true;
 			}
 
-			state = this.world.block(pos);
+			state = block(pos);
 
-			if (BlockUtil.isAir(state))
+			if (isAir(state))
 				return true;
 
-			if (this.piston.position().equals(pos) || isPositionBlocked(pos))
+			if (this.pistonPosition.equals(pos) || isPositionBlocked(pos))
 				return false;
 
 			reaction = getReaction(state, pos);
@@ -215,21 +322,21 @@ public class DefaultStructureCalculator implements PistonStructureCalculator {
 				return true;
 			}
 
-			if (this.toMoveSet.size() >= this.maxBlocks)
+			if (this.toMoveIndex.size() >= this.maxBlocks)
 				return false;
 
+			this.toMoveIndex.put(pos, this.toMove.size());
 			this.toMove.add(pos);
-			this.toMoveSet.add(pos);
 
 			m++;
 		}
 	}
 
 	protected boolean addBranchingBlocks(Vector3i origin) {
-		BlockState originState = this.world.block(origin);
+		BlockState originState = block(origin);
 		for (Direction dir : this.sides) {
 			Vector3i branch = origin.add(dir.asBlockOffset());
-			if (canStickToEachOther(originState, origin, this.world.block(branch), branch) && !addBlockLine(branch, dir))
+			if (canStickToEachOther(originState, origin, block(branch), branch) && !addBlockLine(branch, dir))
 				return false;
 		}
 		return true;
@@ -237,22 +344,27 @@ public class DefaultStructureCalculator implements PistonStructureCalculator {
 
 	protected void reorderListAtCollision(int start, int pivot) {
 		int size = this.toMove.size();
+		Collections.rotate(this.toMove.subList(pivot, size), start);
 
-		List<Vector3i> list = new ArrayList<>(size);
-		list.addAll(this.toMove.subList(0, pivot));
-		list.addAll(this.toMove.subList(size - start, size));
-		list.addAll(this.toMove.subList(pivot, size - start));
-
-		this.toMove.clear();
-		this.toMove.addAll(list);
+		// Update indexes of shifted positions
+		for (int i = pivot; i < size; i++)
+			this.toMoveIndex.put(this.toMove.get(i), i);
 	}
 
 	protected boolean isPositionBlocked(Vector3i pos) {
-		return ReactionUtil.isPositionBlocked(this.world, pos, this.movement);
+		return this.access.isBlocked(pos.x(), pos.y(), pos.z(), this.movement);
+	}
+
+	protected BlockState block(Vector3i pos) {
+		return this.access.block(pos.x(), pos.y(), pos.z());
+	}
+
+	protected boolean isAir(BlockState state) {
+		return BlockUtil.isAir(state);
 	}
 
 	public boolean isSticky(BlockState state, Vector3i pos) {
-		return STICKY_BLOCKS.contains(state.type());
+		return BlockUtil.isSticky(state);
 	}
 
 	public boolean canStickToEachOther(BlockState state1, Vector3i pos1, BlockState state2, Vector3i pos2) {
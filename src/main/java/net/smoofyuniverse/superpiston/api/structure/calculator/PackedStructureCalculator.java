@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.api.structure.calculator;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMaps;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.smoofyuniverse.superpiston.api.structure.PackedPosition;
+import net.smoofyuniverse.superpiston.api.structure.PistonStructure;
+import net.smoofyuniverse.superpiston.impl.BlockUtil;
+import net.smoofyuniverse.superpiston.impl.ReactionUtil;
+import org.spongepowered.api.block.BlockSnapshot;
+import org.spongepowered.api.block.BlockState;
+import org.spongepowered.api.util.Direction;
+import org.spongepowered.api.world.server.ServerWorld;
+import org.spongepowered.math.vector.Vector3i;
+
+/**
+ * A {@link DefaultStructureCalculator} working on positions packed into longs.
+ * The calculated structures are identical but far fewer objects are allocated during the calculation.
+ * Each block is read at most once per calculation.
+ * Subclasses should override the methods accepting packed positions rather than the ones accepting vectors.
+ * The buffers are kept between calculations so a calculator reused through {@link #reset} does not allocate them again.
+ */
+public class PackedStructureCalculator extends DefaultStructureCalculator {
+	protected long pistonPos;
+
+	protected LongArrayList movePositions, destroyPositions;
+	protected Long2IntOpenHashMap movePositionIndex;
+	protected Long2ObjectOpenHashMap<BlockState> stateCache;
+	protected int cacheHits, cacheMisses;
+	protected boolean limitReached;
+
+	public PackedStructureCalculator(ServerWorld world, BlockSnapshot piston, Direction direction, Direction movement) {
+		super(world, piston, direction, movement);
+		this.pistonPos = PackedPosition.pack(piston.position());
+	}
+
+	public PackedStructureCalculator(ServerWorld world, BlockAccess access, BlockSnapshot piston, Direction direction, Direction movement) {
+		super(world, access, piston, direction, movement);
+		this.pistonPos = PackedPosition.pack(piston.position());
+	}
+
+	public PackedStructureCalculator(ServerWorld world, BlockAccess access, Vector3i pistonPosition, Direction direction, Direction movement) {
+		super(world, access, pistonPosition, direction, movement);
+		this.pistonPos = PackedPosition.pack(pistonPosition);
+	}
+
+	@Override
+	public void reset(ServerWorld world, BlockAccess access, BlockSnapshot piston, Direction direction, Direction movement) {
+		super.reset(world, access, piston, direction, movement);
+		this.pistonPos = PackedPosition.pack(piston.position());
+	}
+
+	@Override
+	public void reset(ServerWorld world, BlockAccess access, Vector3i pistonPosition, Direction direction, Direction movement) {
+		super.reset(world, access, pistonPosition, direction, movement);
+		this.pistonPos = PackedPosition.pack(pistonPosition);
+	}
+
+	@Override
+	public PistonStructure calculateStructure() {
+		if (this.movePositions == null) {
+			this.movePositions = new LongArrayList(this.maxBlocks);
+			this.destroyPositions = new LongArrayList();
+			this.movePositionIndex = new Long2IntOpenHashMap(this.maxBlocks);
+			this.movePositionIndex.defaultReturnValue(-1);
+			this.stateCache = new Long2ObjectOpenHashMap<>(this.maxBlocks * 4);
+		} else {
+			this.movePositions.clear();
+			this.movePositions.ensureCapacity(this.maxBlocks);
+			this.destroyPositions.clear();
+			this.movePositionIndex.clear();
+			this.stateCache.clear();
+		}
+		this.cacheHits = 0;
+		this.cacheMisses = 0;
+		this.limitReached = false;
+
+		boolean moveable = calculate(PackedPosition.offset(this.pistonPos, this.direction, this.extending ? 1 : 2));
+
+		return moveable ? PistonStructure.packed(this.movePositions.toLongArray(), this.destroyPositions.toLongArray()) : new PistonStructure(false);
+	}
+
+	protected boolean calculate(long origin) {
+		if (isPositionBlocked(origin))
+			return false;
+
+		BlockState state = block(origin);
+		MovementReaction reaction = getReaction(state, origin);
+
+		if (reaction == MovementReaction.DESTROY) {
+			this.destroyPositions.add(origin);
+			return true;
+		}
+
+		if (reaction == MovementReaction.BLOCK)
+			return false;
+
+		if (!addBlockLine(origin, this.movement))
+			return false;
+
+		for (int i = 0; i < this.movePositions.size(); ++i) {
+			long pos = this.movePositions.getLong(i);
+			if (isSticky(block(pos), pos) && !addBranchingBlocks(pos))
+				return false;
+		}
+
+		return true;
+	}
+
+	protected boolean addBlockLine(long origin, Direction dir) {
+		if (this.movePositionIndex.containsKey(origin))
+			return true;
+
+		if (origin == this.pistonPos || isPositionBlocked(origin))
+			return true;
+
+		BlockState state = block(origin);
+
+		if (isAir(state))
+			return true;
+
+		MovementReaction reaction = getReaction(state, origin);
+		if (reaction != MovementReaction.NORMAL && (reaction != MovementReaction.PUSH_ONLY || this.movement != dir))
+			return true;
+
+		int i = 1;
+		if (i + this.movePositions.size() > this.maxBlocks) {
+			this.limitReached = true;
+			return false;
+		}
+
+		long pos = origin;
+		while (isSticky(state, pos)) {
+			BlockState prevState = state;
+			long prevPos = pos;
+
+			pos = PackedPosition.offset(pos, this.movement, -1);
+
+			if (pos == this.pistonPos || isPositionBlocked(pos))
+				break;
+
+			state = block(pos);
+
+			if (isAir(state))
+				break;
+
+			if (!canStickToEachOther(prevState, prevPos, state, pos))
+				break;
+
+			if (getReaction(state, pos) != MovementReaction.NORMAL)
+				break;
+
+			i++;
+			if (i + this.movePositions.size() > this.maxBlocks) {
+				this.limitReached = true;
+				return false;
+			}
+		}
+
+		int m = 0;
+		for (int j = i - 1; j >= 0; --j) {
+			pos = PackedPosition.offset(origin, this.movement, -j);
+
+			addMovePosition(pos);
+			m++;
+		}
+
+		pos = origin;
+		while (true) {
+			pos = PackedPosition.offset(pos, this.movement);
+
+			int k = this.movePositionIndex.get(pos);
+			if (k > -1) {
+				reorderListAtCollision(m, k);
+
+				for (int l = 0; l <= k + m; ++l) {
+					long pos2 = this.movePositions.getLong(l);
+					if (isSticky(block(pos2), pos2) && !addBranchingBlocks(pos2))
+						return false;
+				}
+
+				return true;
+			}
+
+			state = block(pos);
+
+			if (isAir(state))
+				return true;
+
+			if (pos == this.pistonPos || isPositionBlocked(pos))
+				return false;
+
+			reaction = getReaction(state, pos);
+			if (reaction == MovementReaction.BLOCK)
+				return false;
+
+			if (reaction == MovementReaction.DESTROY) {
+				this.destroyPositions.add(pos);
+				return true;
+			}
+
+			if (this.movePositions.size() >= this.maxBlocks) {
+				this.limitReached = true;
+				return false;
+			}
+
+			addMovePosition(pos);
+
+			m++;
+		}
+	}
+
+	protected boolean addBranchingBlocks(long origin) {
+		BlockState originState = block(origin);
+		for (Direction dir : this.sides) {
+			long branch = PackedPosition.offset(origin, dir);
+			if (canStickToEachOther(originState, origin, block(branch), branch) && !addBlockLine(branch, dir))
+				return false;
+		}
+		return true;
+	}
+
+	protected void addMovePosition(long pos) {
+		this.movePositionIndex.put(pos, this.movePositions.size());
+		this.movePositions.add(pos);
+	}
+
+	@Override
+	protected void reorderListAtCollision(int start, int pivot) {
+		long[] elements = this.movePositions.elements();
+		int size = this.movePositions.size();
+
+		// Rotate the last positions to the pivot in place
+		reverse(elements, pivot, size - start);
+		reverse(elements, size - start, size);
+		reverse(elements, pivot, size);
+
+		// Update indexes of shifted positions
+		for (int i = pivot; i < size; i++)
+			this.movePositionIndex.put(elements[i], i);
+	}
+
+	@Override
+	protected BlockState block(Vector3i pos) {
+		return block(PackedPosition.pack(pos));
+	}
+
+	protected BlockState block(long pos) {
+		BlockState state = this.stateCache.get(pos);
+		if (state == null) {
+			state = readBlock(pos);
+			this.stateCache.put(pos, state);
+			this.cacheMisses++;
+		} else {
+			this.cacheHits++;
+		}
+		return state;
+	}
+
+	protected BlockState readBlock(long pos) {
+		return this.access.block(PackedPosition.x(pos), PackedPosition.y(pos), PackedPosition.z(pos));
+	}
+
+	@Override
+	protected boolean isPositionBlocked(Vector3i pos) {
+		return isPositionBlocked(PackedPosition.pack(pos));
+	}
+
+	protected boolean isPositionBlocked(long pos) {
+		return this.access.isBlocked(PackedPosition.x(pos), PackedPosition.y(pos), PackedPosition.z(pos), this.movement);
+	}
+
+	@Override
+	public boolean isSticky(BlockState state, Vector3i pos) {
+		return isSticky(state, PackedPosition.pack(pos));
+	}
+
+	public boolean isSticky(BlockState state, long pos) {
+		return BlockUtil.isSticky(state);
+	}
+
+	@Override
+	public boolean canStickToEachOther(BlockState state1, Vector3i pos1, BlockState state2, Vector3i pos2) {
+		return canStickToEachOther(state1, PackedPosition.pack(pos1), state2, PackedPosition.pack(pos2));
+	}
+
+	public boolean canStickToEachOther(BlockState state1, long pos1, BlockState state2, long pos2) {
+		boolean sticky1 = isSticky(state1, pos1);
+		boolean sticky2 = isSticky(state2, pos2);
+		if (sticky1 && sticky2)
+			return state1.type() == state2.type();
+		return sticky1 || sticky2;
+	}
+
+	@Override
+	public MovementReaction getReaction(BlockState state, Vector3i pos) {
+		return getReaction(state, PackedPosition.pack(pos));
+	}
+
+	public MovementReaction getReaction(BlockState state, long pos) {
+		return ReactionUtil.getDefaultReaction(state);
+	}
+
+	/**
+	 * Gets the block states read during the last calculation, by packed position.
+	 * The structure only depends on these states, the piston and the world bounds.
+	 *
+	 * @return The block states read.
+	 */
+	public Long2ObjectMap<BlockState> getReadStates() {
+		return this.stateCache == null ? Long2ObjectMaps.emptyMap() : Long2ObjectMaps.unmodifiable(this.stateCache);
+	}
+
+	/**
+	 * @return Whether the last calculation failed because the structure exceeded the maximum number of blocks.
+	 */
+	public boolean isLimitReached() {
+		return this.limitReached;
+	}
+
+	/**
+	 * @return The number of block reads served by the cache during the last calculation.
+	 */
+	public int getCacheHits() {
+		return this.cacheHits;
+	}
+
+	/**
+	 * @return The number of block reads that missed the cache during the last calculation.
+	 */
+	public int getCacheMisses() {
+		return this.cacheMisses;
+	}
+
+	private static void reverse(long[] array, int from, int to) {
+		for (int i = from, j = to - 1; i < j; i++, j--) {
+			long tmp = array[i];
+			array[i] = array[j];
+			array[j] = tmp;
+		}
+	}
+}
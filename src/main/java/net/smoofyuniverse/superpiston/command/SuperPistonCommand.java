@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.command;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import net.smoofyuniverse.superpiston.SuperPiston;
+import net.smoofyuniverse.superpiston.impl.metrics.MetricsReport;
+import net.smoofyuniverse.superpiston.impl.metrics.SlowResolveSampler;
+import org.spongepowered.api.command.Command;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.parameter.CommandContext;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class SuperPistonCommand {
+
+	public static Command.Parameterized create() {
+		Command.Parameterized reset = Command.builder()
+				.shortDescription(Component.text("Resets the piston statistics"))
+				.permission("superpiston.command.stats.reset")
+				.executor(SuperPistonCommand::resetStats)
+				.build();
+
+		Command.Parameterized stats = Command.builder()
+				.shortDescription(Component.text("Shows the piston statistics"))
+				.permission("superpiston.command.stats")
+				.addChild(reset, "reset")
+				.executor(SuperPistonCommand::showStats)
+				.build();
+
+		Command.Parameterized dump = Command.builder()
+				.shortDescription(Component.text("Dumps the slow resolves to a file"))
+				.permission("superpiston.command.trace.dump")
+				.executor(SuperPistonCommand::dumpTraces)
+				.build();
+
+		Command.Parameterized clear = Command.builder()
+				.shortDescription(Component.text("Clears the slow resolves"))
+				.permission("superpiston.command.trace.clear")
+				.executor(SuperPistonCommand::clearTraces)
+				.build();
+
+		Command.Parameterized trace = Command.builder()
+				.shortDescription(Component.text("Manages the slow resolves"))
+				.permission("superpiston.command.trace")
+				.addChild(dump, "dump")
+				.addChild(clear, "clear")
+				.build();
+
+		return Command.builder()
+				.addChild(stats, "stats")
+				.addChild(trace, "trace")
+				.build();
+	}
+
+	private static CommandResult showStats(CommandContext ctx) {
+		if (!SuperPiston.get().getGlobalConfig().metrics.enabled)
+			return CommandResult.error(Component.text("Metrics are disabled."));
+
+		for (String line : MetricsReport.lines())
+			ctx.cause().audience().sendMessage(Component.text(line, NamedTextColor.GRAY));
+		return CommandResult.success();
+	}
+
+	private static CommandResult resetStats(CommandContext ctx) {
+		MetricsReport.reset();
+		ctx.cause().audience().sendMessage(Component.text("Piston statistics have been reset.", NamedTextColor.GREEN));
+		return CommandResult.success();
+	}
+
+	private static CommandResult dumpTraces(CommandContext ctx) {
+		Path file;
+		try {
+			file = SuperPiston.get().dumpSlowResolves();
+		} catch (IOException e) {
+			SuperPiston.LOGGER.error("Failed to dump slow resolves", e);
+			return CommandResult.error(Component.text("Failed to dump slow resolves."));
+		}
+
+		if (file == null)
+			return CommandResult.error(Component.text("Tracing is disabled."));
+
+		ctx.cause().audience().sendMessage(Component.text("Slow resolves have been dumped to " + file.getFileName() + ".", NamedTextColor.GREEN));
+		return CommandResult.success();
+	}
+
+	private static CommandResult clearTraces(CommandContext ctx) {
+		SlowResolveSampler sampler = SuperPiston.get().getSlowResolveSampler();
+		if (sampler == null)
+			return CommandResult.error(Component.text("Tracing is disabled."));
+
+		sampler.clear();
+		ctx.cause().audience().sendMessage(Component.text("Slow resolves have been cleared.", NamedTextColor.GREEN));
+		return CommandResult.success();
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.config.global;
+
+import net.smoofyuniverse.superpiston.SuperPiston;
+import net.smoofyuniverse.superpiston.util.IOUtil;
+import org.spongepowered.configurate.CommentedConfigurationNode;
+import org.spongepowered.configurate.ConfigurationNode;
+import org.spongepowered.configurate.loader.ConfigurationLoader;
+import org.spongepowered.configurate.objectmapping.ConfigSerializable;
+import org.spongepowered.configurate.objectmapping.meta.Setting;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.spongepowered.math.GenericMath.clamp;
+
+@ConfigSerializable
+public class GlobalConfig {
+	public static final int CURRENT_VERSION = 1, MINIMUM__VERSION = 1;
+
+	@Setting(value = "Metrics")
+	public Metrics metrics = new Metrics();
+	@Setting(value = "Tracing")
+	public Tracing tracing = new Tracing();
+
+	public static GlobalConfig load(Path file) throws IOException {
+		ConfigurationLoader<CommentedConfigurationNode> loader = SuperPiston.get().createConfigLoader(file);
+
+		CommentedConfigurationNode root = loader.load();
+		int version = root.node("Version").getInt();
+		if ((version > CURRENT_VERSION || version < MINIMUM__VERSION) && IOUtil.backup(file).isPresent()) {
+			SuperPiston.LOGGER.info("Your global config version is not supported. A new one will be generated.");
+			root = loader.createNode();
+		}
+
+		ConfigurationNode cfgNode = root.node("Config");
+		GlobalConfig cfg = cfgNode.get(GlobalConfig.class, new GlobalConfig());
+
+		cfg.metrics.logInterval = Math.max(cfg.metrics.logInterval, 0);
+		cfg.tracing.threshold = Math.max(cfg.tracing.threshold, 0);
+		cfg.tracing.bufferSize = clamp(cfg.tracing.bufferSize, 1, 65536);
+
+		root.node("Version").set(CURRENT_VERSION);
+		cfgNode.set(cfg);
+		loader.save(root);
+		return cfg;
+	}
+
+	@ConfigSerializable
+	public static class Metrics {
+		@Setting(value = "Enabled")
+		public boolean enabled = false;
+		@Setting(value = "LogInterval")
+		public int logInterval = 60;
+	}
+
+	@ConfigSerializable
+	public static class Tracing {
+		@Setting(value = "Enabled")
+		public boolean enabled = false;
+		@Setting(value = "Threshold")
+		public long threshold = 5000;
+		@Setting(value = "BufferSize")
+		public int bufferSize = 256;
+	}
+}
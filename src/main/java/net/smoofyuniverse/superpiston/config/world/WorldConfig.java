@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2018-2022 Hugo Dupanloup (Yeregorix)
+ * Copyright (c) 2018-2026 Hugo Dupanloup (Yeregorix)
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -23,8 +23,11 @@
 package net.smoofyuniverse.superpiston.config.world;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import net.smoofyuniverse.superpiston.SuperPiston;
 import net.smoofyuniverse.superpiston.api.structure.calculator.DefaultStructureCalculator.MovementReaction;
+import net.smoofyuniverse.superpiston.impl.BlockUtil;
+import net.smoofyuniverse.superpiston.impl.ReactionUtil;
 import net.smoofyuniverse.superpiston.util.IOUtil;
 import org.spongepowered.api.block.BlockState;
 import org.spongepowered.configurate.CommentedConfigurationNode;
@@ -35,8 +38,9 @@ import org.spongepowered.configurate.objectmapping.meta.Setting;
 
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static net.smoofyuniverse.superpiston.util.RegistryUtil.resolveBlockStates;
 import static org.spongepowered.math.GenericMath.clamp;
@@ -44,17 +48,105 @@ import static org.spongepowered.math.GenericMath.clamp;
 @ConfigSerializable
 public class WorldConfig {
 	public static final int CURRENT_VERSION = 1, MINIMUM__VERSION = 1;
-	public static final Resolved VANILLA = new Resolved(ImmutableMap.of(), ImmutableMap.of(), 12);
+	public static final Resolved VANILLA = new Resolved(new WorldConfig(), ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of());
+
+	private static final Map<List<Object>, Resolved> rulesCache = new ConcurrentHashMap<>(), resolvedCache = new ConcurrentHashMap<>();
 
 	@Setting(value = "BlockReactions")
 	public Map<String, MovementReaction> blockReactions = new HashMap<>();
 	@Setting(value = "StickyBlocks")
 	public Map<String, Boolean> stickyBlocks = new HashMap<>();
+	@Setting(value = "StickyGroups")
+	public Map<String, StickyGroup> stickyGroups = new LinkedHashMap<>();
 	@Setting(value = "MaxBlocks")
 	public int maxBlocks = 12;
+	@Setting(value = "AdaptiveMaxBlocks")
+	public AdaptiveMaxBlocks adaptiveMaxBlocks = new AdaptiveMaxBlocks();
+	@Setting(value = "HugeStructures")
+	public HugeStructures hugeStructures = new HugeStructures();
+	@Setting(value = "GroupMovingBlocks")
+	public boolean groupMovingBlocks = false;
+	@Setting(value = "LoadedChunksOnly")
+	public boolean loadedChunksOnly = false;
+	@Setting(value = "StructureCache")
+	public Cache structureCache = new Cache();
+	@Setting(value = "Speculation")
+	public Speculation speculation = new Speculation();
+	@Setting(value = "Budget")
+	public Budget budget = new Budget();
 
+	/**
+	 * Resolves this configuration.
+	 * Configurations with identical content share the same resolved instance,
+	 * and configurations with identical rules share the same block state maps and tables.
+	 *
+	 * @return The resolved configuration.
+	 */
 	public Resolved resolve() {
-		return new Resolved(resolveBlockStates(this.blockReactions), resolveBlockStates(this.stickyBlocks), this.maxBlocks);
+		List<Object> rulesKey = rulesKey();
+		return resolvedCache.computeIfAbsent(settingsKey(rulesKey), k -> {
+			Resolved rules = rulesCache.computeIfAbsent(rulesKey, k2 -> resolveRules());
+			return rules.withSettings(this);
+		});
+	}
+
+	private Resolved resolveRules() {
+		Map<BlockState, String> groups = new HashMap<>();
+		Map<String, Set<BlockState>> stickTo = new HashMap<>();
+		for (Entry<String, StickyGroup> entry : this.stickyGroups.entrySet()) {
+			String name = entry.getKey();
+			StickyGroup group = entry.getValue();
+			for (BlockState state : resolveBlockStates(toKeys(group.blocks)).keySet())
+				groups.put(state, name);
+			stickTo.put(name, resolveBlockStates(toKeys(group.stickTo)).keySet());
+		}
+
+		Resolved resolved = new Resolved(this, resolveBlockStates(this.blockReactions), resolveBlockStates(this.stickyBlocks), groups, stickTo);
+		resolved.rebuildTables();
+		return resolved;
+	}
+
+	// Order matters since later keys override earlier ones
+	private List<Object> rulesKey() {
+		List<Object> groups = new ArrayList<>();
+		for (Entry<String, StickyGroup> entry : this.stickyGroups.entrySet()) {
+			StickyGroup group = entry.getValue();
+			groups.add(Arrays.asList(entry.getKey(), new ArrayList<>(group.blocks), new ArrayList<>(group.stickTo)));
+		}
+		return Arrays.asList(toEntries(this.blockReactions), toEntries(this.stickyBlocks), groups);
+	}
+
+	// Must contain every setting copied by Resolved
+	private List<Object> settingsKey(List<Object> rulesKey) {
+		return Arrays.asList(rulesKey, this.maxBlocks, this.adaptiveMaxBlocks.enabled, this.adaptiveMaxBlocks.minBlocks,
+				this.adaptiveMaxBlocks.threshold, this.adaptiveMaxBlocks.range,
+				this.hugeStructures.enabled, this.hugeStructures.maxBlocks, this.hugeStructures.radius,
+				this.hugeStructures.maxTicks, this.hugeStructures.movesPerTick, this.groupMovingBlocks, this.loadedChunksOnly, this.structureCache.size, this.structureCache.maxAge,
+				this.speculation.enabled, this.speculation.radius,
+				this.budget.nanos, this.budget.blocks, this.budget.policy, this.budget.chunkShare, this.budget.deferMaxTicks, this.budget.deferMaxEvents);
+	}
+
+	private static List<Entry<String, ?>> toEntries(Map<String, ?> map) {
+		List<Entry<String, ?>> list = new ArrayList<>(map.size());
+		for (Entry<String, ?> entry : map.entrySet())
+			list.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+		return list;
+	}
+
+	/**
+	 * Clears resolved configurations kept for sharing.
+	 * Should be called once all configurations have been resolved.
+	 */
+	public static void clearCache() {
+		rulesCache.clear();
+		resolvedCache.clear();
+	}
+
+	private static Map<String, Boolean> toKeys(List<String> list) {
+		Map<String, Boolean> map = new LinkedHashMap<>();
+		for (String key : list)
+			map.put(key, true);
+		return map;
 	}
 
 	public static WorldConfig load(Path file) throws IOException {
@@ -71,6 +163,28 @@ public class WorldConfig {
 		WorldConfig cfg = cfgNode.get(WorldConfig.class, new WorldConfig());
 
 		cfg.maxBlocks = clamp(cfg.maxBlocks, 1, 500);
+		cfg.adaptiveMaxBlocks.minBlocks = clamp(cfg.adaptiveMaxBlocks.minBlocks, 1, cfg.maxBlocks);
+		cfg.adaptiveMaxBlocks.threshold = Math.max(cfg.adaptiveMaxBlocks.threshold, 0);
+		cfg.adaptiveMaxBlocks.range = Math.max(cfg.adaptiveMaxBlocks.range, 1);
+		// A huge structure still moves in a single tick, it gets the same cap as a regular one
+		cfg.hugeStructures.maxBlocks = clamp(cfg.hugeStructures.maxBlocks, cfg.maxBlocks, 500);
+		cfg.hugeStructures.radius = clamp(cfg.hugeStructures.radius, 1, 64);
+		cfg.hugeStructures.maxTicks = clamp(cfg.hugeStructures.maxTicks, 1, 1200);
+		cfg.hugeStructures.movesPerTick = Math.max(cfg.hugeStructures.movesPerTick, 1);
+		cfg.structureCache.size = Math.max(cfg.structureCache.size, 0);
+		cfg.structureCache.maxAge = Math.max(cfg.structureCache.maxAge, 1);
+		// The sections in the radius are copied on the main thread for each deferred event
+		cfg.speculation.radius = clamp(cfg.speculation.radius, 1, 16);
+		cfg.budget.nanos = Math.max(cfg.budget.nanos, 0);
+		cfg.budget.blocks = Math.max(cfg.budget.blocks, 0);
+		cfg.budget.chunkShare = clamp(cfg.budget.chunkShare, 0.01, 1);
+		cfg.budget.deferMaxTicks = clamp(cfg.budget.deferMaxTicks, 1, 1200);
+		cfg.budget.deferMaxEvents = Math.max(cfg.budget.deferMaxEvents, 1);
+		if (cfg.budget.policy == null)
+			cfg.budget.policy = BudgetPolicy.FAIL;
+
+		if (cfg.speculation.enabled && (cfg.budget.policy != BudgetPolicy.DEFER || (cfg.budget.nanos == 0 && cfg.budget.blocks == 0)))
+			SuperPiston.LOGGER.warn("Speculation is enabled in {} but has no effect without a budget using the DEFER policy.", file.getFileName());
 
 		root.node("Version").set(CURRENT_VERSION);
 		cfgNode.set(cfg);
@@ -81,12 +195,362 @@ public class WorldConfig {
 	public static class Resolved {
 		public final Map<BlockState, MovementReaction> blockReactions;
 		public final Map<BlockState, Boolean> stickyBlocks;
+		public final Map<BlockState, String> stickyGroups;
+		public final Map<String, Set<BlockState>> stickTo;
 		public final int maxBlocks;
+		public final boolean adaptiveMaxBlocks;
+		public final int adaptiveMinBlocks;
+		public final double adaptiveThreshold, adaptiveRange;
+		public final boolean hugeStructures;
+		public final int hugeMaxBlocks, hugeRadius, hugeMaxTicks, hugeMovesPerTick;
+		public final boolean groupMovingBlocks, loadedChunksOnly;
+		public final int cacheSize, cacheMaxAge;
+		public final boolean speculation;
+		public final int speculationRadius;
+		public final long budgetNanos, budgetChunkNanos;
+		public final int budgetBlocks, budgetChunkBlocks;
+		public final BudgetPolicy budgetPolicy;
+		public final int budgetDeferMaxTicks, budgetDeferMaxEvents;
+
+		private volatile Tables tables;
+
+		public Resolved(WorldConfig config, Map<BlockState, MovementReaction> blockReactions, Map<BlockState, Boolean> stickyBlocks,
+						Map<BlockState, String> stickyGroups, Map<String, ? extends Set<BlockState>> stickTo) {
+			this(config, ImmutableMap.copyOf(blockReactions), ImmutableMap.copyOf(stickyBlocks), ImmutableMap.copyOf(stickyGroups), copyStickTo(stickTo), null);
+		}
+
+		private Resolved(WorldConfig config, Map<BlockState, MovementReaction> blockReactions, Map<BlockState, Boolean> stickyBlocks,
+						Map<BlockState, String> stickyGroups, Map<String, Set<BlockState>> stickTo, Tables tables) {
+			this.blockReactions = blockReactions;
+			this.stickyBlocks = stickyBlocks;
+			this.stickyGroups = stickyGroups;
+			this.stickTo = stickTo;
+			this.tables = tables;
+			this.maxBlocks = config.maxBlocks;
+			this.adaptiveMaxBlocks = config.adaptiveMaxBlocks.enabled;
+			this.adaptiveMinBlocks = config.adaptiveMaxBlocks.minBlocks;
+			this.adaptiveThreshold = config.adaptiveMaxBlocks.threshold;
+			this.adaptiveRange = config.adaptiveMaxBlocks.range;
+			this.hugeStructures = config.hugeStructures.enabled;
+			this.hugeMaxBlocks = config.hugeStructures.maxBlocks;
+			this.hugeRadius = config.hugeStructures.radius;
+			this.hugeMaxTicks = config.hugeStructures.maxTicks;
+			this.hugeMovesPerTick = config.hugeStructures.movesPerTick;
+			this.groupMovingBlocks = config.groupMovingBlocks;
+			this.loadedChunksOnly = config.loadedChunksOnly;
+			this.cacheSize = config.structureCache.size;
+			this.cacheMaxAge = config.structureCache.maxAge;
+			this.speculation = config.speculation.enabled;
+			this.speculationRadius = config.speculation.radius;
+			this.budgetNanos = config.budget.nanos;
+			this.budgetChunkNanos = (long) (config.budget.nanos * config.budget.chunkShare);
+			this.budgetBlocks = config.budget.blocks;
+			this.budgetChunkBlocks = (int) (config.budget.blocks * config.budget.chunkShare);
+			this.budgetPolicy = config.budget.policy;
+			this.budgetDeferMaxTicks = config.budget.deferMaxTicks;
+			this.budgetDeferMaxEvents = config.budget.deferMaxEvents;
+		}
+
+		private static Map<String, Set<BlockState>> copyStickTo(Map<String, ? extends Set<BlockState>> stickTo) {
+			ImmutableMap.Builder<String, Set<BlockState>> builder = ImmutableMap.builder();
+			stickTo.forEach((name, states) -> builder.put(name, ImmutableSet.copyOf(states)));
+			return builder.build();
+		}
+
+		/**
+		 * Creates a resolved configuration sharing the rules and tables of this one, with the settings of the given configuration.
+		 *
+		 * @param config The configuration.
+		 * @return The resolved configuration.
+		 */
+		public Resolved withSettings(WorldConfig config) {
+			return new Resolved(config, this.blockReactions, this.stickyBlocks, this.stickyGroups, this.stickTo, this.tables);
+		}
+
+		public boolean hasBudget() {
+			return this.budgetNanos > 0 || this.budgetBlocks > 0;
+		}
+
+		/**
+		 * Gets the maximum number of blocks a piston can move given the average tick time.
+		 * In adaptive mode, the limit shrinks linearly from MaxBlocks at the threshold to the minimum at the threshold plus the range.
+		 *
+		 * @param mspt The average tick time in milliseconds.
+		 * @return The maximum number of blocks.
+		 */
+		public int getMaxBlocks(double mspt) {
+			if (!this.adaptiveMaxBlocks || mspt <= this.adaptiveThreshold)
+				return this.maxBlocks;
+
+			double load = Math.min((mspt - this.adaptiveThreshold) / this.adaptiveRange, 1);
+			return this.maxBlocks - (int) Math.round((this.maxBlocks - this.adaptiveMinBlocks) * load);
+		}
+
+		/**
+		 * Rebuilds the tables indexed by block state ids.
+		 * Must be called again whenever the block state registry might have changed.
+		 */
+		public void rebuildTables() {
+			int count = BlockUtil.getStateCount();
+			MovementReaction[] reactions = new MovementReaction[count];
+			boolean[] sticky = new boolean[count];
+			boolean[] vanilla = new boolean[count];
+			int[] stickyClassIds = new int[count];
+
+			List<StickyClass> stickyClasses = new ArrayList<>();
+			Map<StickyClass, Integer> stickyClassIndex = new HashMap<>();
+			stickyClasses.add(StickyClass.NONE);
+			stickyClassIndex.put(StickyClass.NONE, 0);
+
+			for (int id = 0; id < count; id++) {
+				BlockState state = BlockUtil.getState(id);
+				if (state == null)
+					continue;
+
+				try {
+					reactions[id] = computeReaction(state);
+				} catch (IllegalArgumentException ignored) {
+					// Computed again on lookup so the exception is thrown at the same place
+				}
+
+				StickyClass stickyClass = computeStickyClass(state);
+				sticky[id] = stickyClass.isSticky();
+				vanilla[id] = computeVanilla(state, stickyClass);
+				stickyClassIds[id] = stickyClassIndex.computeIfAbsent(stickyClass, k -> {
+					stickyClasses.add(k);
+					return stickyClasses.size() - 1;
+				});
+			}
+
+			int classCount = stickyClasses.size();
+			boolean[] stickMatrix = new boolean[classCount * classCount];
+			for (int i = 0; i < classCount; i++) {
+				for (int j = 0; j < classCount; j++)
+					stickMatrix[i * classCount + j] = canStickToEachOther(stickyClasses.get(i), stickyClasses.get(j));
+			}
+
+			this.tables = new Tables(reactions, sticky, vanilla, stickyClassIds, stickMatrix, classCount);
+		}
+
+		public MovementReaction getReaction(BlockState state) {
+			Tables tables = this.tables;
+			if (tables != null) {
+				int id = BlockUtil.getStateId(state);
+				if (id >= 0 && id < tables.reactions.length) {
+					MovementReaction value = tables.reactions[id];
+					if (value != null)
+						return value;
+				}
+			}
+			return computeReaction(state);
+		}
+
+		public boolean isSticky(BlockState state) {
+			Tables tables = this.tables;
+			if (tables != null) {
+				int id = BlockUtil.getStateId(state);
+				if (id >= 0 && id < tables.sticky.length)
+					return tables.sticky[id];
+			}
+			return computeStickyClass(state).isSticky();
+		}
+
+		/**
+		 * Gets whether the given block state behaves exactly as in vanilla.
+		 * A structure only made of such states and within the vanilla limit is identical to the vanilla one.
+		 *
+		 * @param state The block state.
+		 * @return Whether the block state behaves as in vanilla.
+		 */
+		public boolean isVanilla(BlockState state) {
+			Tables tables = this.tables;
+			if (tables != null) {
+				int id = BlockUtil.getStateId(state);
+				if (id >= 0 && id < tables.vanilla.length)
+					return tables.vanilla[id];
+			}
+			return computeVanilla(state, computeStickyClass(state));
+		}
+
+		public boolean canStickToEachOther(BlockState state1, BlockState state2) {
+			Tables tables = this.tables;
+			if (tables != null) {
+				int id1 = BlockUtil.getStateId(state1), id2 = BlockUtil.getStateId(state2);
+				if (id1 >= 0 && id1 < tables.stickyClassIds.length && id2 >= 0 && id2 < tables.stickyClassIds.length)
+					return tables.stickMatrix[tables.stickyClassIds[id1] * tables.stickyClassCount + tables.stickyClassIds[id2]];
+			}
+			return canStickToEachOther(computeStickyClass(state1), computeStickyClass(state2));
+		}
+
+		private boolean canStickToEachOther(StickyClass class1, StickyClass class2) {
+			return sticksTo(class1, class2) || sticksTo(class2, class1);
+		}
+
+		private boolean sticksTo(StickyClass source, StickyClass target) {
+			if (!source.isSticky())
+				return false;
+			if (source.group() instanceof String) {
+				Set<BlockState> targets = this.stickTo.get(source.group());
+				if (targets != null && !targets.isEmpty())
+					return source.group().equals(target.group()) || target.acceptedBy().contains(source.group());
+			}
+			return !target.isSticky() || source.group().equals(target.group());
+		}
+
+		private StickyClass computeStickyClass(BlockState state) {
+			Object group = this.stickyGroups.get(state);
+			if (group == null && computeSticky(state))
+				group = state.type();
+
+			ImmutableSet.Builder<String> acceptedBy = ImmutableSet.builder();
+			for (Entry<String, Set<BlockState>> entry : this.stickTo.entrySet()) {
+				if (entry.getValue().contains(state))
+					acceptedBy.add(entry.getKey());
+			}
+
+			return new StickyClass(group, acceptedBy.build());
+		}
+
+		private boolean computeVanilla(BlockState state, StickyClass stickyClass) {
+			try {
+				if (computeReaction(state) != ReactionUtil.getDefaultReaction(state))
+					return false;
+			} catch (IllegalArgumentException e) {
+				return false;
+			}
+			return stickyClass.acceptedBy().isEmpty() && Objects.equals(stickyClass.group(), BlockUtil.isSticky(state) ? state.type() : null);
+		}
+
+		private MovementReaction computeReaction(BlockState state) {
+			MovementReaction value = this.blockReactions.get(state);
+			if (value != null)
+				return value;
+			return ReactionUtil.getDefaultReaction(state);
+		}
+
+		private boolean computeSticky(BlockState state) {
+			Boolean value = this.stickyBlocks.get(state);
+			if (value != null)
+				return value;
+			return BlockUtil.isSticky(state);
+		}
+	}
+
+	@ConfigSerializable
+	public static class StickyGroup {
+		@Setting(value = "Blocks")
+		public List<String> blocks = new ArrayList<>();
+		@Setting(value = "StickTo")
+		public List<String> stickTo = new ArrayList<>();
+	}
+
+	@ConfigSerializable
+	public static class AdaptiveMaxBlocks {
+		@Setting(value = "Enabled")
+		public boolean enabled = false;
+		@Setting(value = "MinBlocks")
+		public int minBlocks = 12;
+		@Setting(value = "Threshold")
+		public double threshold = 35;
+		@Setting(value = "Range")
+		public double range = 15;
+	}
+
+	/**
+	 * Structures exceeding MaxBlocks are calculated off the main thread over several ticks.
+	 * The move itself still happens in a single tick and costs as much as a regular move of the same size.
+	 */
+	@ConfigSerializable
+	public static class HugeStructures {
+		@Setting(value = "Enabled")
+		public boolean enabled = false;
+		@Setting(value = "MaxBlocks")
+		public int maxBlocks = 500;
+		@Setting(value = "Radius")
+		public int radius = 32;
+		@Setting(value = "MaxTicks")
+		public int maxTicks = 100;
+		@Setting(value = "MovesPerTick")
+		public int movesPerTick = 1;
+	}
+
+	@ConfigSerializable
+	public static class Cache {
+		@Setting(value = "Size")
+		public int size = 0;
+		@Setting(value = "MaxAge")
+		public int maxAge = 200;
+	}
+
+	/**
+	 * Structures of piston events deferred by the budget are calculated off the main thread until the events run again.
+	 * Requires a budget using the {@link BudgetPolicy#DEFER} policy, other events run in the same tick.
+	 */
+	@ConfigSerializable
+	public static class Speculation {
+		@Setting(value = "Enabled")
+		public boolean enabled = false;
+		@Setting(value = "Radius")
+		public int radius = 8;
+	}
+
+	@ConfigSerializable
+	public static class Budget {
+		@Setting(value = "Nanos")
+		public long nanos = 0;
+		@Setting(value = "Blocks")
+		public int blocks = 0;
+		@Setting(value = "Policy")
+		public BudgetPolicy policy = BudgetPolicy.FAIL;
+		@Setting(value = "ChunkShare")
+		public double chunkShare = 1;
+		@Setting(value = "DeferMaxTicks")
+		public int deferMaxTicks = 20;
+		@Setting(value = "DeferMaxEvents")
+		public int deferMaxEvents = 256;
+	}
+
+	/**
+	 * What happens to a piston once the calculation budget of the tick is exhausted.
+	 */
+	public enum BudgetPolicy {
+		/**
+		 * The structure is not moveable.
+		 */
+		FAIL,
+		/**
+		 * The piston event is queued again for the next tick.
+		 * It fails once it has waited too many ticks or when too many events are already queued.
+		 */
+		DEFER
+	}
+
+	/**
+	 * Block states sharing the same sticky group and accepted by the same groups.
+	 * The group is either the name of a configured group, the block type of a sticky block or null.
+	 */
+	private record StickyClass(Object group, Set<String> acceptedBy) {
+		static final StickyClass NONE = new StickyClass(null, ImmutableSet.of());
+
+		boolean isSticky() {
+			return this.group != null;
+		}
+	}
+
+	private static final class Tables {
+		final MovementReaction[] reactions;
+		final boolean[] sticky, vanilla;
+		final int[] stickyClassIds;
+		final boolean[] stickMatrix;
+		final int stickyClassCount;
 
-		public Resolved(Map<BlockState, MovementReaction> blockReactions, Map<BlockState, Boolean> stickyBlocks, int maxBlocks) {
-			this.blockReactions = ImmutableMap.copyOf(blockReactions);
-			this.stickyBlocks = ImmutableMap.copyOf(stickyBlocks);
-			this.maxBlocks = maxBlocks;
+		Tables(MovementReaction[] reactions, boolean[] sticky, boolean[] vanilla, int[] stickyClassIds, boolean[] stickMatrix, int stickyClassCount) {
+			this.reactions = reactions;
+			this.sticky = sticky;
+			this.vanilla = vanilla;
+			this.stickyClassIds = stickyClassIds;
+			this.stickMatrix = stickMatrix;
+			this.stickyClassCount = stickyClassCount;
 		}
 	}
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.config.world;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import net.smoofyuniverse.map.WorldMap;
+import net.smoofyuniverse.map.WorldMapLoader;
+import net.smoofyuniverse.superpiston.config.world.WorldConfig.Resolved;
+import org.apache.logging.log4j.Logger;
+import org.spongepowered.configurate.CommentedConfigurationNode;
+import org.spongepowered.configurate.loader.ConfigurationLoader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A world map loader that only loads and resolves again the config files that changed since the previous load.
+ * A file is unchanged if its modification time is the same, or else if its content hash is the same.
+ * The tables of reused configs are rebuilt since the block state registry might have changed.
+ */
+public class WorldConfigLoader extends WorldMapLoader<Resolved> {
+	private final Map<Path, FileState> states = new ConcurrentHashMap<>();
+	private final Set<Path> visited = ConcurrentHashMap.newKeySet();
+	private final Set<Resolved> rebuilt = Collections.newSetFromMap(new IdentityHashMap<>());
+	private int loadedCount, reusedCount;
+
+	public WorldConfigLoader(Logger logger, ConfigurationLoader<CommentedConfigurationNode> mapLoader, Path configsDir) {
+		super(logger, mapLoader, configsDir, WorldConfig.VANILLA);
+	}
+
+	/**
+	 * Loads the world map.
+	 * Resolved configs of unchanged files are reused.
+	 * Files that are no longer used are forgotten.
+	 *
+	 * @return The world map.
+	 */
+	public synchronized WorldMap<Resolved> loadChanged() {
+		this.visited.clear();
+		this.rebuilt.clear();
+		this.loadedCount = 0;
+		this.reusedCount = 0;
+
+		WorldMap<Resolved> map = load();
+		this.states.keySet().retainAll(this.visited);
+		this.rebuilt.clear();
+		return map;
+	}
+
+	public int getLoadedCount() {
+		return this.loadedCount;
+	}
+
+	public int getReusedCount() {
+		return this.reusedCount;
+	}
+
+	@Override
+	protected Resolved loadConfig(Path file) throws Exception {
+		this.visited.add(file);
+
+		FileState state = this.states.get(file);
+		if (state != null && Files.exists(file)) {
+			FileTime time = Files.getLastModifiedTime(file);
+			if (time.equals(state.time))
+				return reuse(state.config);
+
+			HashCode hash = hash(file);
+			if (hash.equals(state.hash)) {
+				this.states.put(file, new FileState(time, hash, state.config));
+				return reuse(state.config);
+			}
+		}
+
+		Resolved config = WorldConfig.load(file).resolve();
+		// The file might have been rewritten by the load
+		this.states.put(file, new FileState(Files.getLastModifiedTime(file), hash(file), config));
+		this.loadedCount++;
+		return config;
+	}
+
+	// Configs can be shared by several files
+	private Resolved reuse(Resolved config) {
+		synchronized (this.rebuilt) {
+			if (this.rebuilt.add(config))
+				config.rebuildTables();
+		}
+		this.reusedCount++;
+		return config;
+	}
+
+	private static HashCode hash(Path file) throws IOException {
+		return Hashing.sha256().hashBytes(Files.readAllBytes(file));
+	}
+
+	private record FileState(FileTime time, HashCode hash, Resolved config) {}
+}
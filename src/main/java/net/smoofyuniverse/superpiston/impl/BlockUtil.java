@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2018-2024 Hugo Dupanloup (Yeregorix)
+ * Copyright (c) 2018-2026 Hugo Dupanloup (Yeregorix)
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -22,6 +22,8 @@
 
 package net.smoofyuniverse.superpiston.impl;
 
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.state.BlockState;
 
 public class BlockUtil {
@@ -33,4 +35,21 @@ public class BlockUtil {
 	public static boolean isAir(org.spongepowered.api.block.BlockState state) {
 		return ((BlockState) state).isAir();
 	}
+
+	public static boolean isSticky(org.spongepowered.api.block.BlockState state) {
+		BlockState nmsState = (BlockState) state;
+		return nmsState.is(Blocks.SLIME_BLOCK) || nmsState.is(Blocks.HONEY_BLOCK);
+	}
+
+	public static int getStateId(org.spongepowered.api.block.BlockState state) {
+		return Block.getId((BlockState) state);
+	}
+
+	public static int getStateCount() {
+		return Block.BLOCK_STATE_REGISTRY.size();
+	}
+
+	public static org.spongepowered.api.block.BlockState getState(int id) {
+		return (org.spongepowered.api.block.BlockState) Block.BLOCK_STATE_REGISTRY.byId(id);
+	}
 }
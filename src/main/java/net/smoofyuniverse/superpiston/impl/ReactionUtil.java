@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2018-2025 Hugo Dupanloup (Yeregorix)
+ * Copyright (c) 2018-2026 Hugo Dupanloup (Yeregorix)
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -22,7 +22,6 @@
 
 package net.smoofyuniverse.superpiston.impl;
 
-import net.minecraft.core.BlockPos;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.Blocks;
@@ -31,24 +30,28 @@ import net.minecraft.world.level.block.state.BlockState;
 import net.smoofyuniverse.superpiston.api.structure.calculator.DefaultStructureCalculator.MovementReaction;
 import org.spongepowered.api.util.Direction;
 import org.spongepowered.api.world.server.ServerWorld;
-import org.spongepowered.common.util.VecHelper;
 import org.spongepowered.math.vector.Vector3i;
 
 public class ReactionUtil {
 
 	public static boolean isPositionBlocked(ServerWorld world, Vector3i pos, Direction movement) {
-		BlockPos blockPos = VecHelper.toBlockPos(pos);
+		return isPositionBlocked(world, pos.x(), pos.y(), pos.z(), movement);
+	}
+
+	public static boolean isPositionBlocked(ServerWorld world, int x, int y, int z, Direction movement) {
 		ServerLevel level = (ServerLevel) world;
 
-		if (!level.getWorldBorder().isWithinBounds(blockPos))
+		if (!level.getWorldBorder().isWithinBounds(x, z))
 			return true;
 
-		int minY = level.getMinY();
-		if (pos.y() < minY || (movement == Direction.DOWN && pos.y() == minY))
+		return isOutsideHeight(level.getMinY(), level.getMaxY(), y, movement);
+	}
+
+	public static boolean isOutsideHeight(int minY, int maxY, int y, Direction movement) {
+		if (y < minY || (movement == Direction.DOWN && y == minY))
 			return true;
 
-		int maxY = level.getMaxY();
-		if (pos.y() > maxY || (movement == Direction.UP && pos.y() == maxY))
+		if (y > maxY || (movement == Direction.UP && y == maxY))
 			return true;
 
 		return false;
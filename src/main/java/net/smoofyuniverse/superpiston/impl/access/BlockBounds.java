@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.impl.access;
+
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.border.WorldBorder;
+import org.spongepowered.api.util.Direction;
+
+/**
+ * The box of positions a block can be moved to, combining the world border and the build height.
+ * All bounds are inclusive.
+ */
+public record BlockBounds(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+
+	/**
+	 * Gets whether the given position is blocked.
+	 * This is equivalent to {@link net.smoofyuniverse.superpiston.impl.ReactionUtil#isPositionBlocked} at the time these bounds were computed.
+	 *
+	 * @param x        The X coordinate.
+	 * @param y        The Y coordinate.
+	 * @param z        The Z coordinate.
+	 * @param movement The direction of the movement.
+	 * @return Whether the position is blocked.
+	 */
+	public boolean isBlocked(int x, int y, int z, Direction movement) {
+		if (x < this.minX || x > this.maxX || z < this.minZ || z > this.maxZ)
+			return true;
+
+		if (y < this.minY || (movement == Direction.DOWN && y == this.minY))
+			return true;
+
+		return y > this.maxY || (movement == Direction.UP && y == this.maxY);
+	}
+
+	/**
+	 * Computes the current bounds of the given level.
+	 *
+	 * @param level The level.
+	 * @return The bounds.
+	 */
+	public static BlockBounds of(ServerLevel level) {
+		WorldBorder border = level.getWorldBorder();
+		// A block is within the border if minX <= x < maxX
+		return new BlockBounds((int) Math.ceil(border.getMinX()), level.getMinY(), (int) Math.ceil(border.getMinZ()),
+				(int) Math.ceil(border.getMaxX()) - 1, level.getMaxY(), (int) Math.ceil(border.getMaxZ()) - 1);
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.impl.access;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import net.smoofyuniverse.superpiston.api.structure.calculator.BlockAccess;
+import net.smoofyuniverse.superpiston.impl.ReactionUtil;
+import org.spongepowered.api.block.BlockState;
+import org.spongepowered.api.util.Direction;
+import org.spongepowered.api.world.server.ServerWorld;
+
+/**
+ * A {@link BlockAccess} reading the live world.
+ */
+public class LevelBlockAccess implements BlockAccess {
+	protected final ServerWorld world;
+	protected final ServerLevel level;
+	private final BlockPos.MutableBlockPos mutablePos = new BlockPos.MutableBlockPos();
+
+	public LevelBlockAccess(ServerWorld world) {
+		this.world = world;
+		this.level = (ServerLevel) world;
+	}
+
+	@Override
+	public BlockState block(int x, int y, int z) {
+		return (BlockState) this.level.getBlockState(this.mutablePos.set(x, y, z));
+	}
+
+	@Override
+	public boolean isBlocked(int x, int y, int z, Direction movement) {
+		return ReactionUtil.isPositionBlocked(this.world, x, y, z, movement);
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.impl.access;
+
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import org.spongepowered.api.block.BlockState;
+import org.spongepowered.api.util.Direction;
+import org.spongepowered.api.world.server.ServerWorld;
+
+/**
+ * A {@link LevelBlockAccess} keeping the last chunk and section it read.
+ * Structures are compact, so most reads skip the chunk lookup and go straight to the section.
+ * The sections are live, this view is only valid as long as the chunks stay loaded.
+ * The world border and the build height are combined into bounds computed once and kept until {@link #reset()}.
+ * In loaded only mode, chunks are never loaded and positions in unloaded chunks are blocked.
+ * Reading such a position returns a barrier that does not exist in the world, see {@link #hasReadUnloaded()}.
+ */
+public class SectionBlockAccess extends LevelBlockAccess {
+	private static final BlockState VOID_AIR = (BlockState) Blocks.VOID_AIR.defaultBlockState(),
+			BARRIER = (BlockState) Blocks.BARRIER.defaultBlockState();
+
+	private boolean loadedOnly, readUnloaded;
+	private BlockBounds bounds;
+
+	private LevelChunk chunk;
+	private int chunkX, chunkZ;
+
+	private LevelChunkSection section;
+	private int sectionX, sectionY, sectionZ;
+
+	public SectionBlockAccess(ServerWorld world) {
+		this(world, false);
+	}
+
+	public SectionBlockAccess(ServerWorld world, boolean loadedOnly) {
+		super(world);
+		this.loadedOnly = loadedOnly;
+	}
+
+	public boolean isLoadedOnly() {
+		return this.loadedOnly;
+	}
+
+	public void setLoadedOnly(boolean value) {
+		this.loadedOnly = value;
+	}
+
+	/**
+	 * Gets whether a position in an unloaded chunk has been read since the last {@link #reset()}.
+	 * Calculators may read a position before checking whether it is blocked, so the synthetic barrier can end up in their read states.
+	 *
+	 * @return Whether a synthetic state has been read.
+	 */
+	public boolean hasReadUnloaded() {
+		return this.readUnloaded;
+	}
+
+	/**
+	 * Forgets the bounds, the last chunk and section, and whether an unloaded chunk has been read.
+	 * Must be called before reusing this access in a later tick since the border might have moved and the chunks might have been unloaded.
+	 */
+	public void reset() {
+		this.bounds = null;
+		this.readUnloaded = false;
+		this.chunk = null;
+		this.section = null;
+	}
+
+	@Override
+	public BlockState block(int x, int y, int z) {
+		if (this.level.isOutsideBuildHeight(y))
+			return VOID_AIR;
+
+		int sectionX = x >> 4, sectionY = y >> 4, sectionZ = z >> 4;
+		if (this.section == null || sectionX != this.sectionX || sectionY != this.sectionY || sectionZ != this.sectionZ) {
+			LevelChunk chunk = getChunk(sectionX, sectionZ);
+			// The position is blocked, but the state might still be read before the check
+			if (chunk == null) {
+				this.readUnloaded = true;
+				return BARRIER;
+			}
+
+			this.section = chunk.getSection(chunk.getSectionIndex(y));
+			this.sectionX = sectionX;
+			this.sectionY = sectionY;
+			this.sectionZ = sectionZ;
+		}
+
+		return (BlockState) this.section.getBlockState(x & 15, y & 15, z & 15);
+	}
+
+	@Override
+	public boolean isBlocked(int x, int y, int z, Direction movement) {
+		if (this.bounds == null)
+			this.bounds = BlockBounds.of(this.level);
+		if (this.bounds.isBlocked(x, y, z, movement))
+			return true;
+
+		return this.loadedOnly && getChunk(x >> 4, z >> 4) == null;
+	}
+
+	private LevelChunk getChunk(int chunkX, int chunkZ) {
+		if (this.chunk == null || chunkX != this.chunkX || chunkZ != this.chunkZ) {
+			LevelChunk chunk = this.loadedOnly ? this.level.getChunkSource().getChunkNow(chunkX, chunkZ) : this.level.getChunk(chunkX, chunkZ);
+			if (chunk == null)
+				return null;
+
+			this.chunk = chunk;
+			this.chunkX = chunkX;
+			this.chunkZ = chunkZ;
+		}
+		return this.chunk;
+	}
+}
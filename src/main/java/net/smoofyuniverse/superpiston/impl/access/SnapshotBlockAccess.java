@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.impl.access;
+
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.smoofyuniverse.superpiston.api.structure.calculator.BlockAccess;
+import net.smoofyuniverse.superpiston.impl.internal.InternalChunkSection;
+import org.spongepowered.api.block.BlockState;
+import org.spongepowered.api.util.Direction;
+import org.spongepowered.api.world.server.ServerWorld;
+
+/**
+ * An immutable {@link BlockAccess} over copies of the chunk sections of a box.
+ * It must be captured on the server thread but can then be read from any thread.
+ * Reading a block outside the captured box or in a chunk that was not loaded throws an {@link OutsideSnapshotException}.
+ * The version of each captured section is recorded so the server thread can later check whether the snapshot is still accurate.
+ */
+public final class SnapshotBlockAccess implements BlockAccess {
+	private static final BlockState VOID_AIR = (BlockState) Blocks.VOID_AIR.defaultBlockState();
+
+	private final PalettedContainer<net.minecraft.world.level.block.state.BlockState>[] sections;
+	private final LevelChunkSection[] sources;
+	private final int[] versions;
+	private final int minSectionX, minSectionY, minSectionZ;
+	private final int sizeX, sizeY, sizeZ;
+	private final int minY, maxY;
+	private final BlockBounds bounds;
+
+	@SuppressWarnings("unchecked")
+	private SnapshotBlockAccess(ServerLevel level, int minSectionX, int minSectionY, int minSectionZ, int maxSectionX, int maxSectionY, int maxSectionZ) {
+		this.minSectionX = minSectionX;
+		this.minSectionY = minSectionY;
+		this.minSectionZ = minSectionZ;
+		this.sizeX = maxSectionX - minSectionX + 1;
+		this.sizeY = maxSectionY - minSectionY + 1;
+		this.sizeZ = maxSectionZ - minSectionZ + 1;
+
+		this.minY = level.getMinY();
+		this.maxY = level.getMaxY();
+
+		this.bounds = BlockBounds.of(level);
+
+		int count = this.sizeX * this.sizeY * this.sizeZ;
+		this.sections = new PalettedContainer[count];
+		this.sources = new LevelChunkSection[count];
+		this.versions = new int[count];
+		for (int dx = 0; dx < this.sizeX; dx++) {
+			for (int dz = 0; dz < this.sizeZ; dz++) {
+				LevelChunk chunk = level.getChunkSource().getChunkNow(minSectionX + dx, minSectionZ + dz);
+				if (chunk == null)
+					continue;
+				for (int dy = 0; dy < this.sizeY; dy++) {
+					int i = index(dx, dy, dz);
+					LevelChunkSection section = chunk.getSection(chunk.getSectionIndexFromSectionY(minSectionY + dy));
+					this.sections[i] = section.getStates().copy();
+					this.sources[i] = section;
+					this.versions[i] = ((InternalChunkSection) section).getVersion();
+				}
+			}
+		}
+	}
+
+	private int index(int dx, int dy, int dz) {
+		return (dx * this.sizeZ + dz) * this.sizeY + dy;
+	}
+
+	@Override
+	public BlockState block(int x, int y, int z) {
+		if (y < this.minY || y > this.maxY)
+			return VOID_AIR;
+
+		int dx = (x >> 4) - this.minSectionX, dy = (y >> 4) - this.minSectionY, dz = (z >> 4) - this.minSectionZ;
+		if (dx < 0 || dx >= this.sizeX || dy < 0 || dy >= this.sizeY || dz < 0 || dz >= this.sizeZ)
+			throw OutsideSnapshotException.INSTANCE;
+
+		PalettedContainer<net.minecraft.world.level.block.state.BlockState> section = this.sections[index(dx, dy, dz)];
+		if (section == null)
+			throw OutsideSnapshotException.INSTANCE;
+
+		return (BlockState) section.get(x & 15, y & 15, z & 15);
+	}
+
+	/**
+	 * Gets the index of the captured section containing the given position.
+	 *
+	 * @param x The X coordinate.
+	 * @param y The Y coordinate.
+	 * @param z The Z coordinate.
+	 * @return The index of the section, or -1 if the position is outside the build height or the captured box.
+	 */
+	public int getSectionIndex(int x, int y, int z) {
+		if (y < this.minY || y > this.maxY)
+			return -1;
+
+		int dx = (x >> 4) - this.minSectionX, dy = (y >> 4) - this.minSectionY, dz = (z >> 4) - this.minSectionZ;
+		if (dx < 0 || dx >= this.sizeX || dy < 0 || dy >= this.sizeY || dz < 0 || dz >= this.sizeZ)
+			return -1;
+
+		return index(dx, dy, dz);
+	}
+
+	/**
+	 * Gets whether the given captured section is still loaded and unchanged since the capture.
+	 * Must be called on the server thread.
+	 *
+	 * @param level The level this snapshot was captured from.
+	 * @param index The index of the section.
+	 * @return Whether the section is unchanged.
+	 */
+	public boolean isSectionUnchanged(ServerLevel level, int index) {
+		int dy = index % this.sizeY, dz = (index / this.sizeY) % this.sizeZ, dx = index / (this.sizeY * this.sizeZ);
+		LevelChunk chunk = level.getChunkSource().getChunkNow(this.minSectionX + dx, this.minSectionZ + dz);
+		if (chunk == null)
+			return false;
+
+		LevelChunkSection section = this.sources[index];
+		return section != null && chunk.getSection(chunk.getSectionIndexFromSectionY(this.minSectionY + dy)) == section
+				&& ((InternalChunkSection) section).getVersion() == this.versions[index];
+	}
+
+	/**
+	 * Gets whether the world border is unchanged since the capture.
+	 * Must be called on the server thread.
+	 *
+	 * @param level The level this snapshot was captured from.
+	 * @return Whether the world border is unchanged.
+	 */
+	public boolean isBorderUnchanged(ServerLevel level) {
+		return BlockBounds.of(level).equals(this.bounds);
+	}
+
+	@Override
+	public boolean isBlocked(int x, int y, int z, Direction movement) {
+		return this.bounds.isBlocked(x, y, z, movement);
+	}
+
+	/**
+	 * Captures the sections containing the given box.
+	 * The box is clamped to the build height of the world.
+	 * Chunks are never loaded, sections of unloaded chunks are not captured.
+	 *
+	 * @param world The world.
+	 * @param minX  The minimum X coordinate.
+	 * @param minY  The minimum Y coordinate.
+	 * @param minZ  The minimum Z coordinate.
+	 * @param maxX  The maximum X coordinate.
+	 * @param maxY  The maximum Y coordinate.
+	 * @param maxZ  The maximum Z coordinate.
+	 * @return The snapshot.
+	 */
+	public static SnapshotBlockAccess capture(ServerWorld world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		ServerLevel level = (ServerLevel) world;
+		minY = Math.max(minY, level.getMinY());
+		maxY = Math.min(maxY, level.getMaxY());
+		if (minX > maxX || minY > maxY || minZ > maxZ)
+			throw new IllegalArgumentException("box");
+
+		return new SnapshotBlockAccess(level, minX >> 4, minY >> 4, minZ >> 4, maxX >> 4, maxY >> 4, maxZ >> 4);
+	}
+
+	/**
+	 * Thrown when a block outside the captured box is read.
+	 * The stack trace is not filled since this is expected when a structure outgrows its snapshot.
+	 */
+	public static final class OutsideSnapshotException extends RuntimeException {
+		public static final OutsideSnapshotException INSTANCE = new OutsideSnapshotException();
+
+		private OutsideSnapshotException() {
+			super("Block outside of the snapshot", null, false, false);
+		}
+	}
+}
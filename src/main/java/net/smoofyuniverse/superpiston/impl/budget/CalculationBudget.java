@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.impl.budget;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.block.Block;
+import net.smoofyuniverse.superpiston.config.world.WorldConfig.Resolved;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The time and blocks spent calculating structures in a world during the current tick.
+ * Each chunk can optionally be limited to a share of the budget so a single region cannot starve the others.
+ * Piston events deferred because of an exhausted budget are queued again at the start of the next tick.
+ * A deferred event is dropped once it has waited too many ticks, and the number of events queued per tick is limited.
+ */
+public class CalculationBudget {
+	private final ServerLevel level;
+	private final Long2LongOpenHashMap chunkNanos = new Long2LongOpenHashMap(), chunkBlocks = new Long2LongOpenHashMap();
+	private long nanos, blocks;
+	private List<DeferredEvent> deferred = new ArrayList<>();
+	private final Long2IntOpenHashMap requeued = new Long2IntOpenHashMap();
+
+	public CalculationBudget(ServerLevel level) {
+		this.level = level;
+	}
+
+	public boolean isExhausted(Resolved config, long chunk) {
+		if (config.budgetNanos > 0) {
+			if (this.nanos >= config.budgetNanos)
+				return true;
+			if (config.budgetChunkNanos < config.budgetNanos && this.chunkNanos.get(chunk) >= config.budgetChunkNanos)
+				return true;
+		}
+
+		if (config.budgetBlocks > 0) {
+			if (this.blocks >= config.budgetBlocks)
+				return true;
+			if (config.budgetChunkBlocks < config.budgetBlocks && this.chunkBlocks.get(chunk) >= config.budgetChunkBlocks)
+				return true;
+		}
+
+		return false;
+	}
+
+	public void charge(long chunk, long nanos, int blocks) {
+		this.nanos += nanos;
+		this.blocks += blocks;
+		this.chunkNanos.addTo(chunk, nanos);
+		this.chunkBlocks.addTo(chunk, blocks);
+	}
+
+	/**
+	 * Queues the piston event again for the next tick.
+	 * The event is dropped if it has already waited more than the given number of ticks or if the queue is full.
+	 *
+	 * @param config   The config of the world.
+	 * @param pos      The position of the piston.
+	 * @param block    The block of the piston.
+	 * @param type     The type of the event.
+	 * @param data     The data of the event.
+	 * @param maxTicks The maximum number of ticks the event can wait.
+	 */
+	public void defer(Resolved config, BlockPos pos, Block block, int type, int data, int maxTicks) {
+		if (this.deferred.size() >= config.budgetDeferMaxEvents)
+			return;
+
+		// An event queued again keeps the tick it was first deferred
+		int tick = this.level.getServer().getTickCount();
+		int firstTick = this.requeued.getOrDefault(pos.asLong(), tick);
+		if (tick - firstTick >= maxTicks)
+			return;
+
+		this.deferred.add(new DeferredEvent(pos.immutable(), block, type, data, firstTick));
+	}
+
+	/**
+	 * Resets the budget and queues the deferred piston events again.
+	 * Must be called at the start of every tick.
+	 */
+	public void startTick() {
+		this.nanos = 0;
+		this.blocks = 0;
+		this.chunkNanos.clear();
+		this.chunkBlocks.clear();
+
+		this.requeued.clear();
+		if (!this.deferred.isEmpty()) {
+			List<DeferredEvent> events = this.deferred;
+			this.deferred = new ArrayList<>();
+			for (DeferredEvent e : events) {
+				this.requeued.put(e.pos.asLong(), e.firstTick);
+				this.level.blockEvent(e.pos, e.block, e.type, e.data);
+			}
+		}
+	}
+
+	private record DeferredEvent(BlockPos pos, Block block, int type, int data, int firstTick) {}
+}
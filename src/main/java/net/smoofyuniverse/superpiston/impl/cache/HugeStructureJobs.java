@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.impl.cache;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import net.smoofyuniverse.superpiston.config.world.WorldConfig.Resolved;
+import net.smoofyuniverse.superpiston.impl.access.SnapshotBlockAccess;
+import net.smoofyuniverse.superpiston.impl.cache.StructureSpeculator.Result;
+import org.spongepowered.api.util.Direction;
+import org.spongepowered.api.world.server.ServerWorld;
+import org.spongepowered.math.vector.Vector3i;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Calculations of structures exceeding the regular limit, spread over multiple ticks.
+ * Only the calculation is spread: the structure is moved by a single vanilla move, which costs as much as a regular move of the same size.
+ * The size of a huge structure is therefore capped like the regular limit, huge structures only move the calculation off the main thread.
+ * The sections around the piston are captured and the structure is calculated from that snapshot on worker threads,
+ * while the piston event is deferred from tick to tick until the calculation is done.
+ * The box of the snapshot is locked: events of other pistons inside it are deferred until the job is taken or expires.
+ * The number of huge structures moved per tick is limited.
+ */
+public class HugeStructureJobs {
+	private final ServerLevel level;
+	private final Map<StructureCache.Key, Job> jobs = new HashMap<>();
+	private int moveTick, moveCount;
+
+	public HugeStructureJobs(ServerLevel level) {
+		this.level = level;
+	}
+
+	public boolean isEmpty() {
+		return this.jobs.isEmpty();
+	}
+
+	/**
+	 * Removes the jobs that can no longer be taken, their piston will not move.
+	 * Must be called at the start of each tick.
+	 */
+	public void startTick() {
+		if (this.jobs.isEmpty())
+			return;
+
+		int tick = currentTick();
+		Iterator<Job> it = this.jobs.values().iterator();
+		while (it.hasNext()) {
+			Job job = it.next();
+			if (job.tick + job.config.hugeMaxTicks < tick) {
+				job.future.cancel(false);
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Gets whether the event of the given piston must wait for a later tick.
+	 * This is the case while its own calculation is running, while it is inside the box of another job,
+	 * or when its structure is ready but enough huge structures have already moved during this tick.
+	 *
+	 * @param config    The config of the world.
+	 * @param piston    The packed position of the piston.
+	 * @param direction The direction of the piston.
+	 * @param movement  The direction of the movement.
+	 * @return Whether the event must be deferred.
+	 */
+	public boolean shouldDefer(Resolved config, long piston, Direction direction, Direction movement) {
+		if (this.jobs.isEmpty())
+			return false;
+
+		int tick = currentTick();
+
+		// The own job is checked first so that two overlapping jobs do not lock each other
+		Job own = this.jobs.get(new StructureCache.Key(piston, direction, movement));
+		if (own != null) {
+			if (!own.future.isDone())
+				return own.tick + config.hugeMaxTicks >= tick;
+			return this.moveTick == tick && this.moveCount >= config.hugeMovesPerTick;
+		}
+
+		int x = BlockPos.getX(piston), y = BlockPos.getY(piston), z = BlockPos.getZ(piston);
+		for (Job job : this.jobs.values()) {
+			// A finished job still locks its box, the structure has not moved yet
+			if (job.piston != piston && job.tick + config.hugeMaxTicks >= tick && job.contains(x, y, z))
+				return true;
+		}
+		return false;
+	}
+
+	public boolean hasJob(long piston, Direction direction, Direction movement) {
+		return this.jobs.containsKey(new StructureCache.Key(piston, direction, movement));
+	}
+
+	public void submit(Resolved config, long piston, Direction direction, Direction movement) {
+		StructureCache.Key key = new StructureCache.Key(piston, direction, movement);
+		if (this.jobs.containsKey(key))
+			return;
+
+		ServerWorld world = (ServerWorld) this.level;
+		int x = BlockPos.getX(piston), y = BlockPos.getY(piston), z = BlockPos.getZ(piston), r = config.hugeRadius;
+		SnapshotBlockAccess snapshot = SnapshotBlockAccess.capture(world, x - r, y - r, z - r, x + r, y + r, z + r);
+		Vector3i position = new Vector3i(x, y, z);
+		int maxBlocks = config.hugeMaxBlocks;
+
+		this.jobs.put(key, new Job(config, piston, direction, movement, snapshot, x - r, y - r, z - r, x + r, y + r, z + r, currentTick(),
+				CompletableFuture.supplyAsync(() -> StructureSpeculator.calculate(world, snapshot, position, direction, movement, config, maxBlocks), StructureSpeculator.EXECUTOR)));
+	}
+
+	/**
+	 * Removes the job of the given piston and returns its result if it can be used.
+	 * A successful take counts as a move for the per tick limit.
+	 *
+	 * @param config    The config of the world.
+	 * @param piston    The packed position of the piston.
+	 * @param direction The direction of the piston.
+	 * @param movement  The direction of the movement.
+	 * @return The result, or null if there is no job, it is not finished, it took too long or the world has changed.
+	 */
+	public Result take(Resolved config, long piston, Direction direction, Direction movement) {
+		if (this.jobs.isEmpty())
+			return null;
+
+		Job job = this.jobs.remove(new StructureCache.Key(piston, direction, movement));
+		if (job == null)
+			return null;
+
+		int tick = currentTick();
+		if (!job.future.isDone() || job.tick + config.hugeMaxTicks < tick) {
+			job.future.cancel(false);
+			return null;
+		}
+
+		Result result = job.future.getNow(null);
+		if (result == null || job.config != config || !job.snapshot.isBorderUnchanged(this.level))
+			return null;
+
+		for (int section : result.sections()) {
+			if (!job.snapshot.isSectionUnchanged(this.level, section))
+				return null;
+		}
+
+		if (this.moveTick != tick) {
+			this.moveTick = tick;
+			this.moveCount = 0;
+		}
+		this.moveCount++;
+
+		return result;
+	}
+
+	public void clear() {
+		for (Job job : this.jobs.values())
+			job.future.cancel(false);
+		this.jobs.clear();
+	}
+
+	private int currentTick() {
+		return this.level.getServer().getTickCount();
+	}
+
+	private record Job(Resolved config, long piston, Direction direction, Direction movement, SnapshotBlockAccess snapshot,
+						int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int tick, CompletableFuture<Result> future) {
+
+		boolean contains(int x, int y, int z) {
+			return x >= this.minX && x <= this.maxX && y >= this.minY && y <= this.maxY && z >= this.minZ && z <= this.maxZ;
+		}
+	}
+}
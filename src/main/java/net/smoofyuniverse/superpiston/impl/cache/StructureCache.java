@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.impl.cache;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMaps;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerChunkCache;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.border.WorldBorder;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.smoofyuniverse.superpiston.api.structure.PackedPosition;
+import net.smoofyuniverse.superpiston.api.structure.PistonStructure;
+import net.smoofyuniverse.superpiston.config.world.WorldConfig.Resolved;
+import org.spongepowered.api.block.BlockState;
+import org.spongepowered.api.util.Direction;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A per-world cache of calculated structures.
+ * An entry is only reused if every block state read during its calculation is unchanged,
+ * so changes inside the footprint of a structure invalidate it.
+ * An entry is also only reused with the maximum number of blocks it was calculated with.
+ * Entries are evicted when the cache is full (least recently used first) or when they are too old.
+ */
+public class StructureCache {
+	private final ServerLevel level;
+	private final BlockPos.MutableBlockPos mutablePos = new BlockPos.MutableBlockPos();
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private Resolved config;
+
+	public StructureCache(ServerLevel level) {
+		this.level = level;
+	}
+
+	public Entry get(Resolved config, int maxBlocks, long piston, Direction direction, Direction movement) {
+		if (this.config != config)
+			return null;
+
+		Entry entry = this.entries.get(new Key(piston, direction, movement));
+		if (entry == null)
+			return null;
+
+		if (entry.maxBlocks != maxBlocks || entry.tick + config.cacheMaxAge < currentTick() || !entry.isValid()) {
+			this.entries.remove(entry.key);
+			return null;
+		}
+
+		return entry;
+	}
+
+	public void put(Resolved config, int maxBlocks, long piston, Direction direction, Direction movement, PistonStructure structure, boolean vanillaEquivalent, Long2ObjectMap<BlockState> readStates) {
+		if (this.config != config) {
+			this.entries.clear();
+			this.config = config;
+		}
+
+		Key key = new Key(piston, direction, movement);
+		this.entries.put(key, new Entry(key, maxBlocks, structure, vanillaEquivalent, readStates));
+
+		if (this.entries.size() > config.cacheSize) {
+			int maxAge = config.cacheMaxAge, tick = currentTick();
+			Iterator<Entry> it = this.entries.values().iterator();
+			while (it.hasNext()) {
+				Entry entry = it.next();
+				if (this.entries.size() > config.cacheSize || entry.tick + maxAge < tick)
+					it.remove();
+			}
+		}
+	}
+
+	public void clear() {
+		this.entries.clear();
+		this.config = null;
+	}
+
+	private int currentTick() {
+		return this.level.getServer().getTickCount();
+	}
+
+	record Key(long piston, Direction direction, Direction movement) {}
+
+	public final class Entry {
+		final Key key;
+		final int maxBlocks;
+		final PistonStructure structure;
+		final boolean vanillaEquivalent;
+		final long[] positions;
+		final net.minecraft.world.level.block.state.BlockState[] states;
+		final double borderMinX, borderMaxX, borderMinZ, borderMaxZ;
+		final int tick;
+
+		Entry(Key key, int maxBlocks, PistonStructure structure, boolean vanillaEquivalent, Long2ObjectMap<BlockState> readStates) {
+			this.key = key;
+			this.maxBlocks = maxBlocks;
+			this.structure = structure;
+			this.vanillaEquivalent = vanillaEquivalent;
+
+			this.positions = new long[readStates.size()];
+			this.states = new net.minecraft.world.level.block.state.BlockState[readStates.size()];
+			int i = 0;
+			for (Long2ObjectMap.Entry<BlockState> e : Long2ObjectMaps.fastIterable(readStates)) {
+				this.positions[i] = e.getLongKey();
+				this.states[i] = (net.minecraft.world.level.block.state.BlockState) e.getValue();
+				i++;
+			}
+
+			WorldBorder border = StructureCache.this.level.getWorldBorder();
+			this.borderMinX = border.getMinX();
+			this.borderMaxX = border.getMaxX();
+			this.borderMinZ = border.getMinZ();
+			this.borderMaxZ = border.getMaxZ();
+			this.tick = currentTick();
+		}
+
+		public PistonStructure structure() {
+			return this.structure;
+		}
+
+		public boolean isVanillaEquivalent() {
+			return this.vanillaEquivalent;
+		}
+
+		boolean isValid() {
+			WorldBorder border = StructureCache.this.level.getWorldBorder();
+			if (border.getMinX() != this.borderMinX || border.getMaxX() != this.borderMaxX
+					|| border.getMinZ() != this.borderMinZ || border.getMaxZ() != this.borderMaxZ)
+				return false;
+
+			// Reading a block must not load its chunk, an unloaded chunk may have changed
+			ServerChunkCache chunkSource = StructureCache.this.level.getChunkSource();
+			LevelChunk chunk = null;
+			BlockPos.MutableBlockPos pos = StructureCache.this.mutablePos;
+			for (int i = 0; i < this.positions.length; i++) {
+				long p = this.positions[i];
+				int x = PackedPosition.x(p), z = PackedPosition.z(p);
+				if (chunk == null || chunk.getPos().x != x >> 4 || chunk.getPos().z != z >> 4) {
+					chunk = chunkSource.getChunkNow(x >> 4, z >> 4);
+					if (chunk == null)
+						return false;
+				}
+				pos.set(x, PackedPosition.y(p), z);
+				if (chunk.getBlockState(pos) != this.states[i])
+					return false;
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.impl.cache;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import net.smoofyuniverse.superpiston.SuperPiston;
+import net.smoofyuniverse.superpiston.api.structure.PackedPosition;
+import net.smoofyuniverse.superpiston.api.structure.PistonStructure;
+import net.smoofyuniverse.superpiston.config.world.WorldConfig.Resolved;
+import net.smoofyuniverse.superpiston.impl.access.SnapshotBlockAccess;
+import net.smoofyuniverse.superpiston.impl.access.SnapshotBlockAccess.OutsideSnapshotException;
+import net.smoofyuniverse.superpiston.impl.calculator.SuperPistonStructureCalculator;
+import org.spongepowered.api.block.BlockState;
+import org.spongepowered.api.util.Direction;
+import org.spongepowered.api.world.server.ServerWorld;
+import org.spongepowered.math.vector.Vector3i;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Calculates structures ahead of time on worker threads.
+ * When a piston event is deferred to a later tick, the sections the structure can reach are captured and the structure is calculated from that snapshot.
+ * The result is only used if it is ready when the piston moves and if no section read during the calculation has changed since the capture.
+ */
+public class StructureSpeculator {
+	private static final int MAX_AGE = 20;
+	private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+	static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 4), r -> {
+		Thread thread = new Thread(r, "SuperPiston Speculation #" + THREAD_COUNT.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final ServerLevel level;
+	private final LinkedHashMap<StructureCache.Key, Job> jobs = new LinkedHashMap<>();
+
+	public StructureSpeculator(ServerLevel level) {
+		this.level = level;
+	}
+
+	public void submit(Resolved config, BlockPos pos, Direction direction, Direction movement) {
+		int tick = currentTick();
+
+		// Jobs are ordered by submission, drop the ones whose piston never moved
+		Iterator<Job> it = this.jobs.values().iterator();
+		while (it.hasNext()) {
+			Job job = it.next();
+			if (job.tick + MAX_AGE >= tick)
+				break;
+			job.future.cancel(false);
+			it.remove();
+		}
+
+		// An event deferred again keeps its job, the result is checked against the world when it is taken
+		StructureCache.Key key = new StructureCache.Key(pos.asLong(), direction, movement);
+		if (this.jobs.containsKey(key))
+			return;
+
+		ServerWorld world = (ServerWorld) this.level;
+		int maxBlocks = SuperPistonStructureCalculator.getMaxBlocks(world, config);
+
+		// Every block of the structure is connected to the first one, so nothing further than the limit is read
+		Vector3i piston = new Vector3i(pos.getX(), pos.getY(), pos.getZ());
+		Vector3i start = piston.add(direction.asBlockOffset().mul(direction == movement ? 1 : 2));
+		int r = Math.min(config.speculationRadius, maxBlocks + 1);
+		SnapshotBlockAccess snapshot = SnapshotBlockAccess.capture(world, start.x() - r, start.y() - r, start.z() - r, start.x() + r, start.y() + r, start.z() + r);
+
+		this.jobs.put(key, new Job(config, maxBlocks, snapshot, tick,
+				CompletableFuture.supplyAsync(() -> calculate(world, snapshot, piston, direction, movement, config, maxBlocks), EXECUTOR)));
+	}
+
+	/**
+	 * Cancels the job of the given piston without using its result.
+	 *
+	 * @param piston    The packed position of the piston.
+	 * @param direction The direction of the piston.
+	 * @param movement  The direction of the movement.
+	 */
+	public void discard(long piston, Direction direction, Direction movement) {
+		if (this.jobs.isEmpty())
+			return;
+
+		Job job = this.jobs.remove(new StructureCache.Key(piston, direction, movement));
+		if (job != null)
+			job.future.cancel(false);
+	}
+
+	/**
+	 * Removes the job of the given piston and returns its result if it can be used.
+	 *
+	 * @param config    The config of the world.
+	 * @param maxBlocks The maximum number of blocks.
+	 * @param piston    The packed position of the piston.
+	 * @param direction The direction of the piston.
+	 * @param movement  The direction of the movement.
+	 * @return The result, or null if there is no job, it is not finished or the world has changed.
+	 */
+	public Result take(Resolved config, int maxBlocks, long piston, Direction direction, Direction movement) {
+		if (this.jobs.isEmpty())
+			return null;
+
+		Job job = this.jobs.remove(new StructureCache.Key(piston, direction, movement));
+		if (job == null)
+			return null;
+
+		if (!job.future.isDone()) {
+			job.future.cancel(false);
+			return null;
+		}
+
+		Result result = job.future.getNow(null);
+		if (result == null || job.config != config || job.maxBlocks != maxBlocks || !job.snapshot.isBorderUnchanged(this.level))
+			return null;
+
+		for (int section : result.sections) {
+			if (!job.snapshot.isSectionUnchanged(this.level, section))
+				return null;
+		}
+
+		return result;
+	}
+
+	public void clear() {
+		for (Job job : this.jobs.values())
+			job.future.cancel(false);
+		this.jobs.clear();
+	}
+
+	private int currentTick() {
+		return this.level.getServer().getTickCount();
+	}
+
+	static Result calculate(ServerWorld world, SnapshotBlockAccess snapshot, Vector3i piston, Direction direction, Direction movement, Resolved config, int maxBlocks) {
+		SuperPistonStructureCalculator calculator = new SuperPistonStructureCalculator(world, snapshot, piston, direction, movement, config);
+		calculator.setMaxBlocks(maxBlocks);
+
+		PistonStructure structure;
+		try {
+			structure = calculator.calculateStructure();
+		} catch (OutsideSnapshotException e) {
+			return null;
+		} catch (Exception e) {
+			SuperPiston.LOGGER.debug("Speculative structure calculation has failed", e);
+			return null;
+		}
+
+		Long2ObjectMap<BlockState> readStates = calculator.getReadStates();
+		IntOpenHashSet sections = new IntOpenHashSet();
+		LongIterator it = readStates.keySet().iterator();
+		while (it.hasNext()) {
+			long pos = it.nextLong();
+			int section = snapshot.getSectionIndex(PackedPosition.x(pos), PackedPosition.y(pos), PackedPosition.z(pos));
+			if (section != -1)
+				sections.add(section);
+		}
+
+		return new Result(structure, calculator.isVanillaEquivalent(structure), readStates, sections.toIntArray());
+	}
+
+	private record Job(Resolved config, int maxBlocks, SnapshotBlockAccess snapshot, int tick, CompletableFuture<Result> future) {}
+
+	public record Result(PistonStructure structure, boolean vanillaEquivalent, Long2ObjectMap<BlockState> readStates, int[] sections) {}
+}
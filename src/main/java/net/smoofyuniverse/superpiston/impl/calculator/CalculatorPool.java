@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.impl.calculator;
+
+import net.smoofyuniverse.superpiston.config.world.WorldConfig.Resolved;
+import net.smoofyuniverse.superpiston.impl.access.SectionBlockAccess;
+import org.spongepowered.api.util.Direction;
+import org.spongepowered.api.world.server.ServerWorld;
+import org.spongepowered.math.vector.Vector3i;
+
+import java.util.ArrayDeque;
+
+/**
+ * A per-world pool of calculators and their block access.
+ * Pooled calculators keep their buffers so steady-state resolves do not allocate them.
+ * A calculator must only be released once nothing else holds a reference to it,
+ * so calculators exposed to other plugins through events are never pooled.
+ */
+public class CalculatorPool {
+	private static final int MAX_SIZE = 4;
+
+	private final ServerWorld world;
+	private final ArrayDeque<Pooled> free = new ArrayDeque<>(MAX_SIZE);
+
+	public CalculatorPool(ServerWorld world) {
+		this.world = world;
+	}
+
+	public Pooled acquire(Vector3i pistonPosition, Direction direction, Direction movement, Resolved config) {
+		Pooled pooled = this.free.pollFirst();
+		if (pooled == null) {
+			SectionBlockAccess access = new SectionBlockAccess(this.world, config.loadedChunksOnly);
+			return new Pooled(new SuperPistonStructureCalculator(this.world, access, pistonPosition, direction, movement, config), access);
+		}
+
+		pooled.access.setLoadedOnly(config.loadedChunksOnly);
+		pooled.calculator.reset(this.world, pooled.access, pistonPosition, direction, movement, config);
+		return pooled;
+	}
+
+	public void release(Pooled pooled) {
+		if (this.free.size() < MAX_SIZE) {
+			pooled.access.reset();
+			this.free.addFirst(pooled);
+		}
+	}
+
+	public record Pooled(SuperPistonStructureCalculator calculator, SectionBlockAccess access) {}
+}
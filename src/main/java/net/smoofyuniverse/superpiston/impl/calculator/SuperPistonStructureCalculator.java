@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2018-2022 Hugo Dupanloup (Yeregorix)
+ * Copyright (c) 2018-2026 Hugo Dupanloup (Yeregorix)
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -22,39 +22,117 @@
 
 package net.smoofyuniverse.superpiston.impl.calculator;
 
-import net.smoofyuniverse.superpiston.api.structure.calculator.DefaultStructureCalculator;
+import net.minecraft.server.level.ServerLevel;
+import net.smoofyuniverse.superpiston.api.structure.PistonStructure;
+import net.smoofyuniverse.superpiston.api.structure.calculator.BlockAccess;
+import net.smoofyuniverse.superpiston.api.structure.calculator.PackedStructureCalculator;
+import net.smoofyuniverse.superpiston.config.world.WorldConfig;
 import net.smoofyuniverse.superpiston.config.world.WorldConfig.Resolved;
+import net.smoofyuniverse.superpiston.impl.access.SectionBlockAccess;
 import org.spongepowered.api.block.BlockSnapshot;
 import org.spongepowered.api.block.BlockState;
 import org.spongepowered.api.util.Direction;
 import org.spongepowered.api.world.server.ServerWorld;
 import org.spongepowered.math.vector.Vector3i;
 
-public class SuperPistonStructureCalculator extends DefaultStructureCalculator {
-	public final Resolved config;
+public class SuperPistonStructureCalculator extends PackedStructureCalculator {
+	public Resolved config;
 
 	public SuperPistonStructureCalculator(ServerWorld world, BlockSnapshot piston, Direction direction, Direction movement, Resolved config) {
-		super(world, piston, direction, movement);
+		this(world, new SectionBlockAccess(world, config.loadedChunksOnly), piston, direction, movement, config);
+	}
+
+	public SuperPistonStructureCalculator(ServerWorld world, BlockAccess access, BlockSnapshot piston, Direction direction, Direction movement, Resolved config) {
+		super(world, access, piston, direction, movement);
+		if (config == null)
+			throw new IllegalArgumentException("config");
+
+		this.config = config;
+		this.maxBlocks = getMaxBlocks(world, config);
+	}
+
+	public SuperPistonStructureCalculator(ServerWorld world, BlockAccess access, Vector3i pistonPosition, Direction direction, Direction movement, Resolved config) {
+		super(world, access, pistonPosition, direction, movement);
+		if (config == null)
+			throw new IllegalArgumentException("config");
+
+		this.config = config;
+		this.maxBlocks = getMaxBlocks(world, config);
+	}
+
+	public void reset(ServerWorld world, BlockAccess access, BlockSnapshot piston, Direction direction, Direction movement, Resolved config) {
+		if (config == null)
+			throw new IllegalArgumentException("config");
+
+		reset(world, access, piston, direction, movement);
+		this.config = config;
+		this.maxBlocks = getMaxBlocks(world, config);
+	}
+
+	public void reset(ServerWorld world, BlockAccess access, Vector3i pistonPosition, Direction direction, Direction movement, Resolved config) {
 		if (config == null)
 			throw new IllegalArgumentException("config");
 
+		reset(world, access, pistonPosition, direction, movement);
 		this.config = config;
-		this.maxBlocks = config.maxBlocks;
+		this.maxBlocks = getMaxBlocks(world, config);
+	}
+
+	/**
+	 * Gets the maximum number of blocks a piston can move in the given world right now.
+	 * It only differs from the configured value in adaptive mode, depending on the average tick time of the server.
+	 *
+	 * @param world  The world.
+	 * @param config The config of the world.
+	 * @return The maximum number of blocks.
+	 */
+	public static int getMaxBlocks(ServerWorld world, Resolved config) {
+		if (!config.adaptiveMaxBlocks || world == null)
+			return config.maxBlocks;
+		return config.getMaxBlocks(((ServerLevel) world).getServer().getAverageTickTimeNanos() / 1_000_000d);
+	}
+
+	/**
+	 * Gets whether the last calculated structure is provably identical to the one vanilla would calculate.
+	 * This is the case when the structure fits in the vanilla limit and every block state read behaves as in vanilla.
+	 * A structure that read synthetic states is never equivalent since they do not exist for the clients.
+	 *
+	 * @param structure The last calculated structure.
+	 * @return Whether the structure is identical to the vanilla one.
+	 */
+	public boolean isVanillaEquivalent(PistonStructure structure) {
+		if (structure.getBlocksToMoveCount() > WorldConfig.VANILLA.maxBlocks || hasSyntheticStates())
+			return false;
+
+		for (BlockState state : this.stateCache.values()) {
+			if (!this.config.isVanilla(state))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets whether the last calculation read states that do not exist in the world, such as the blocks of unloaded chunks.
+	 * Such states must not be used to validate the structure later.
+	 *
+	 * @return Whether synthetic states have been read.
+	 */
+	public boolean hasSyntheticStates() {
+		return this.access instanceof SectionBlockAccess && ((SectionBlockAccess) this.access).hasReadUnloaded();
+	}
+
+	@Override
+	public boolean isSticky(BlockState state, long pos) {
+		return this.config.isSticky(state);
 	}
 
 	@Override
-	public boolean isSticky(BlockState state, Vector3i pos) {
-		Boolean value = this.config.stickyBlocks.get(state);
-		if (value != null)
-			return value;
-		return super.isSticky(state, pos);
+	public boolean canStickToEachOther(BlockState state1, long pos1, BlockState state2, long pos2) {
+		return this.config.canStickToEachOther(state1, state2);
 	}
 
 	@Override
-	public MovementReaction getReaction(BlockState state, Vector3i pos) {
-		MovementReaction value = this.config.blockReactions.get(state);
-		if (value != null)
-			return value;
-		return super.getReaction(state, pos);
+	public MovementReaction getReaction(BlockState state, long pos) {
+		return this.config.getReaction(state);
 	}
 }
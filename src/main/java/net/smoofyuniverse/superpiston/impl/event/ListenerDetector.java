@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.impl.event;
+
+import net.smoofyuniverse.superpiston.SuperPiston;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.event.Event;
+import org.spongepowered.api.event.EventManager;
+import org.spongepowered.plugin.PluginContainer;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+
+/**
+ * Detects whether plugins other than SuperPiston listen to the structure calculation events.
+ * The Sponge API cannot tell which listeners are registered, so the handler cache of the implementation is inspected.
+ * If it cannot be inspected, the events are assumed to be listened and are always posted.
+ * The result is refreshed at most once per tick since listeners can be registered at any time.
+ */
+public class ListenerDetector {
+	private final PluginContainer plugin;
+	private final Event preProbe, postProbe;
+
+	private Method getHandlerCache, getListeners, getPlugin;
+	private boolean supported = true;
+
+	private int lastTick = -1;
+	private boolean preListened = true, postListened = true;
+
+	public ListenerDetector(PluginContainer plugin) {
+		this.plugin = plugin;
+		this.preProbe = new PreStructureCalculationEvent(null, null, null, null, null, null);
+		this.postProbe = new PostStructureCalculationEvent(null, null, null, null, null, null, null);
+	}
+
+	public boolean isPreListened() {
+		return this.preListened;
+	}
+
+	public boolean isPostListened() {
+		return this.postListened;
+	}
+
+	/**
+	 * Refreshes the result if it has not been refreshed during the given tick.
+	 *
+	 * @param tick The current tick.
+	 */
+	public void update(int tick) {
+		if (!this.supported || tick == this.lastTick)
+			return;
+		this.lastTick = tick;
+
+		try {
+			EventManager manager = Sponge.eventManager();
+			this.preListened = hasOtherListeners(manager, this.preProbe);
+			this.postListened = hasOtherListeners(manager, this.postProbe);
+		} catch (Exception e) {
+			SuperPiston.LOGGER.debug("Event listeners cannot be inspected, events will always be posted", e);
+			this.supported = false;
+			this.preListened = true;
+			this.postListened = true;
+		}
+	}
+
+	private boolean hasOtherListeners(EventManager manager, Event probe) throws Exception {
+		if (this.getHandlerCache == null)
+			this.getHandlerCache = findMethod(manager.getClass(), "getHandlerCache", Event.class);
+
+		Object cache = this.getHandlerCache.invoke(manager, probe);
+		if (this.getListeners == null)
+			this.getListeners = findMethod(cache.getClass(), "getListeners");
+
+		for (Object listener : (Collection<?>) this.getListeners.invoke(cache)) {
+			if (this.getPlugin == null) {
+				try {
+					this.getPlugin = findMethod(listener.getClass(), "plugin");
+				} catch (NoSuchMethodException e) {
+					this.getPlugin = findMethod(listener.getClass(), "getPlugin");
+				}
+			}
+			if (this.getPlugin.invoke(listener) != this.plugin)
+				return true;
+		}
+		return false;
+	}
+
+	private static Method findMethod(Class<?> type, String name, Class<?>... parameters) throws NoSuchMethodException {
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			try {
+				Method method = c.getDeclaredMethod(name, parameters);
+				method.setAccessible(true);
+				return method;
+			} catch (NoSuchMethodException ignored) {
+			}
+		}
+		throw new NoSuchMethodException(type.getName() + "." + name);
+	}
+}
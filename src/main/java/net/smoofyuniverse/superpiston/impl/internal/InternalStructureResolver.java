@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2018-2022 Hugo Dupanloup (Yeregorix)
+ * Copyright (c) 2018-2026 Hugo Dupanloup (Yeregorix)
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -22,11 +22,40 @@
 
 package net.smoofyuniverse.superpiston.impl.internal;
 
-import net.minecraft.core.BlockPos;
-
-import java.util.Set;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.smoofyuniverse.superpiston.impl.metrics.ResolveTrace;
 
 public interface InternalStructureResolver {
 
-	Set<BlockPos> resolveBlocksToRefresh();
+	LongSet resolveBlocksToRefresh();
+
+	/**
+	 * Gets whether the last resolve has timings that have not been taken yet.
+	 *
+	 * @return Whether the last resolve is traced.
+	 */
+	boolean isTraced();
+
+	/**
+	 * Gets and forgets the trace of the last resolve.
+	 * The trace is only created if the resolve is slower than the threshold of the sampler.
+	 *
+	 * @param refreshNanos The time spent refreshing the clients after the resolve.
+	 * @return The trace, or null if tracing is disabled, the last resolve did not complete or it was fast enough.
+	 */
+	ResolveTrace takeTrace(long refreshNanos);
+
+	/**
+	 * Gets whether the last resolve failed because the structure is too large for the regular limit
+	 * and is now being calculated as a huge structure.
+	 *
+	 * @return Whether the piston waits for its huge structure.
+	 */
+	boolean isWaitingForHugeStructure();
+
+	/**
+	 * Allows the next resolve to calculate the structure as a huge structure if it is too large for the regular limit.
+	 * Only the resolve of checkIfExtend can wait for its huge structure, other resolves would leave the job unused.
+	 */
+	void allowHugeStructure();
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.impl.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of non-negative values with power of two buckets.
+ * Recording a value only increments striped counters.
+ */
+public final class Histogram {
+	private static final int BUCKETS = 64;
+
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	public Histogram() {
+		for (int i = 0; i < BUCKETS; i++)
+			this.buckets[i] = new LongAdder();
+	}
+
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+		this.buckets[BUCKETS - Long.numberOfLeadingZeros(value)].increment();
+		this.sum.add(value);
+		this.max.accumulate(value);
+	}
+
+	public void reset() {
+		for (LongAdder bucket : this.buckets)
+			bucket.reset();
+		this.sum.reset();
+		this.max.reset();
+	}
+
+	public Snapshot snapshot() {
+		long[] counts = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = this.buckets[i].sum();
+			count += counts[i];
+		}
+		return new Snapshot(counts, count, this.sum.sum(), this.max.get());
+	}
+
+	public record Snapshot(long[] buckets, long count, long sum, long max) {
+		public static final Snapshot EMPTY = new Snapshot(new long[BUCKETS], 0, 0, 0);
+
+		public double mean() {
+			return this.count == 0 ? 0 : (double) this.sum / this.count;
+		}
+
+		/**
+		 * Gets an upper bound of the given percentile.
+		 * The bound is the end of the bucket containing the percentile, or the maximum if lower.
+		 *
+		 * @param p The percentile, between 0 and 1.
+		 * @return The upper bound.
+		 */
+		public long percentile(double p) {
+			long rank = (long) Math.ceil(p * this.count), seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += this.buckets[i];
+				if (seen >= rank && seen != 0)
+					return i == 0 ? 0 : Math.min(this.max, i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1);
+			}
+			return this.max;
+		}
+
+		public Snapshot merge(Snapshot other) {
+			long[] counts = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++)
+				counts[i] = this.buckets[i] + other.buckets[i];
+			return new Snapshot(counts, this.count + other.count, this.sum + other.sum, Math.max(this.max, other.max));
+		}
+
+		@Override
+		public String toString() {
+			return String.format("count=%d mean=%.1f p50<=%d p99<=%d max=%d", this.count, mean(), percentile(0.5), percentile(0.99), this.max);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.impl.metrics;
+
+import net.smoofyuniverse.superpiston.impl.internal.InternalWorld;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.world.server.ServerWorld;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MetricsReport {
+
+	public static ResolveMetrics.Snapshot total() {
+		ResolveMetrics.Snapshot total = ResolveMetrics.Snapshot.EMPTY;
+		for (ServerWorld world : Sponge.server().worldManager().worlds())
+			total = total.merge(((InternalWorld) world).getResolveMetrics().snapshot());
+		return total;
+	}
+
+	public static List<String> lines() {
+		List<String> lines = new ArrayList<>();
+		ResolveMetrics.Snapshot total = ResolveMetrics.Snapshot.EMPTY;
+		for (ServerWorld world : Sponge.server().worldManager().worlds()) {
+			ResolveMetrics.Snapshot snapshot = ((InternalWorld) world).getResolveMetrics().snapshot();
+			if (snapshot.resolves() == 0)
+				continue;
+			lines.add(world.key().asString() + ": " + snapshot.countersToString());
+			total = total.merge(snapshot);
+		}
+
+		lines.add(0, "Total: " + total.countersToString());
+		for (String line : total.histogramsToString())
+			lines.add(line);
+		return lines;
+	}
+
+	public static void reset() {
+		for (ServerWorld world : Sponge.server().worldManager().worlds())
+			((InternalWorld) world).getResolveMetrics().reset();
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.impl.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms about the structures resolved in a world.
+ */
+public final class ResolveMetrics {
+	public final LongAdder resolves = new LongAdder(), moveable = new LongAdder(), blocked = new LongAdder(),
+			cancelled = new LongAdder(), throttled = new LongAdder(), exceptions = new LongAdder();
+	public final Histogram calculationNanos = new Histogram(), structureSize = new Histogram(), destroySize = new Histogram(),
+			blockLookups = new Histogram(), preEventNanos = new Histogram(), postEventNanos = new Histogram();
+
+	public void reset() {
+		this.resolves.reset();
+		this.moveable.reset();
+		this.blocked.reset();
+		this.cancelled.reset();
+		this.throttled.reset();
+		this.exceptions.reset();
+		this.calculationNanos.reset();
+		this.structureSize.reset();
+		this.destroySize.reset();
+		this.blockLookups.reset();
+		this.preEventNanos.reset();
+		this.postEventNanos.reset();
+	}
+
+	public Snapshot snapshot() {
+		return new Snapshot(this.resolves.sum(), this.moveable.sum(), this.blocked.sum(), this.cancelled.sum(), this.throttled.sum(), this.exceptions.sum(),
+				this.calculationNanos.snapshot(), this.structureSize.snapshot(), this.destroySize.snapshot(),
+				this.blockLookups.snapshot(), this.preEventNanos.snapshot(), this.postEventNanos.snapshot());
+	}
+
+	public record Snapshot(long resolves, long moveable, long blocked, long cancelled, long throttled, long exceptions,
+						   Histogram.Snapshot calculationNanos, Histogram.Snapshot structureSize, Histogram.Snapshot destroySize,
+						   Histogram.Snapshot blockLookups, Histogram.Snapshot preEventNanos, Histogram.Snapshot postEventNanos) {
+		public static final Snapshot EMPTY = new Snapshot(0, 0, 0, 0, 0, 0, Histogram.Snapshot.EMPTY, Histogram.Snapshot.EMPTY,
+				Histogram.Snapshot.EMPTY, Histogram.Snapshot.EMPTY, Histogram.Snapshot.EMPTY, Histogram.Snapshot.EMPTY);
+
+		public Snapshot merge(Snapshot other) {
+			return new Snapshot(this.resolves + other.resolves, this.moveable + other.moveable, this.blocked + other.blocked,
+					this.cancelled + other.cancelled, this.throttled + other.throttled, this.exceptions + other.exceptions,
+					this.calculationNanos.merge(other.calculationNanos), this.structureSize.merge(other.structureSize),
+					this.destroySize.merge(other.destroySize), this.blockLookups.merge(other.blockLookups),
+					this.preEventNanos.merge(other.preEventNanos), this.postEventNanos.merge(other.postEventNanos));
+		}
+
+		public String countersToString() {
+			return String.format("resolves=%d moveable=%d blocked=%d cancelled=%d throttled=%d exceptions=%d",
+					this.resolves, this.moveable, this.blocked, this.cancelled, this.throttled, this.exceptions);
+		}
+
+		public String[] histogramsToString() {
+			return new String[]{
+					"Calculation (ns): " + this.calculationNanos,
+					"Structure size: " + this.structureSize,
+					"Destroyed blocks: " + this.destroySize,
+					"Block lookups: " + this.blockLookups,
+					"Pre event (ns): " + this.preEventNanos,
+					"Post event (ns): " + this.postEventNanos
+			};
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.impl.metrics;
+
+import org.spongepowered.api.util.Direction;
+
+/**
+ * The cost of a single resolve, split between the calculation, the events and the refresh of the clients.
+ * The source is the calculator that calculated the structure, or where the structure was reused from.
+ */
+public final class ResolveTrace {
+	public final long time;
+	public final String world;
+	public final int x, y, z;
+	public final Direction direction, movement;
+	public final String source;
+	public final int blocks, destroyed;
+	public final long calculationNanos, eventNanos, refreshNanos;
+
+	public ResolveTrace(String world, int x, int y, int z, Direction direction, Direction movement, String source,
+						int blocks, int destroyed, long calculationNanos, long eventNanos, long refreshNanos) {
+		this.time = System.currentTimeMillis();
+		this.world = world;
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.direction = direction;
+		this.movement = movement;
+		this.source = source;
+		this.blocks = blocks;
+		this.destroyed = destroyed;
+		this.calculationNanos = calculationNanos;
+		this.eventNanos = eventNanos;
+		this.refreshNanos = refreshNanos;
+	}
+
+	public long totalNanos() {
+		return this.calculationNanos + this.eventNanos + this.refreshNanos;
+	}
+
+	public String toLine() {
+		return this.time + "\t" + this.world + "\t" + this.x + "\t" + this.y + "\t" + this.z + "\t" + this.direction + "\t" + this.movement
+				+ "\t" + this.blocks + "\t" + this.destroyed + "\t" + this.calculationNanos + "\t" + this.eventNanos + "\t" + this.refreshNanos + "\t" + this.source;
+	}
+
+	public static String header() {
+		return "time\tworld\tx\ty\tz\tdirection\tmovement\tblocks\tdestroyed\tcalculation_ns\tevent_ns\trefresh_ns\tsource";
+	}
+}
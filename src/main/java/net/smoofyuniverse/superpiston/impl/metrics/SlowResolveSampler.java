@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.impl.metrics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A bounded ring buffer of the resolves slower than a threshold.
+ * Once full, the oldest traces are overwritten.
+ */
+public class SlowResolveSampler {
+	private final long thresholdNanos;
+	private final ResolveTrace[] traces;
+	private int next, size;
+
+	public SlowResolveSampler(long thresholdNanos, int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity");
+		this.thresholdNanos = thresholdNanos;
+		this.traces = new ResolveTrace[capacity];
+	}
+
+	public long getThresholdNanos() {
+		return this.thresholdNanos;
+	}
+
+	public int getCapacity() {
+		return this.traces.length;
+	}
+
+	public synchronized int size() {
+		return this.size;
+	}
+
+	public void offer(ResolveTrace trace) {
+		if (trace.totalNanos() < this.thresholdNanos)
+			return;
+
+		synchronized (this) {
+			this.traces[this.next] = trace;
+			this.next = (this.next + 1) % this.traces.length;
+			if (this.size < this.traces.length)
+				this.size++;
+		}
+	}
+
+	public synchronized void clear() {
+		Arrays.fill(this.traces, null);
+		this.next = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Writes the traces, oldest first, to a tab-separated file.
+	 *
+	 * @param file The file.
+	 * @return The number of traces written.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public int dump(Path file) throws IOException {
+		ResolveTrace[] snapshot;
+		synchronized (this) {
+			snapshot = new ResolveTrace[this.size];
+			int start = (this.next - this.size + this.traces.length) % this.traces.length;
+			for (int i = 0; i < this.size; i++)
+				snapshot[i] = this.traces[(start + i) % this.traces.length];
+		}
+
+		Files.createDirectories(file.getParent());
+		try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+			writer.write(ResolveTrace.header());
+			writer.newLine();
+			for (ResolveTrace trace : snapshot) {
+				writer.write(trace.toLine());
+				writer.newLine();
+			}
+		}
+		return snapshot.length;
+	}
+}
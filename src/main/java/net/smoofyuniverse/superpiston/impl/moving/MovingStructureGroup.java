@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.impl.moving;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.phys.AABB;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The moving blocks created by a single piston move.
+ * Instead of each moving block querying the entities in its own movement area every tick,
+ * the entities in the area of the whole structure are queried once per tick and shared by all the blocks.
+ * When too many entities are around the structure, the blocks fall back to their own query.
+ * Groups are only built on the server thread.
+ */
+public class MovingStructureGroup {
+	// Covers the collision shapes taller than a block and the movement of a tick
+	private static final int MARGIN = 2;
+	// Above this, filtering the shared list for each block costs more than the indexed query of the level
+	private static final int MAX_SHARED_ENTITIES = 32;
+	private static MovingStructureGroup current;
+
+	private int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+	private int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+	private AABB area;
+
+	private List<Entity> entities;
+	private long entitiesTime;
+
+	private void include(BlockPos pos) {
+		this.minX = Math.min(this.minX, pos.getX());
+		this.minY = Math.min(this.minY, pos.getY());
+		this.minZ = Math.min(this.minZ, pos.getZ());
+		this.maxX = Math.max(this.maxX, pos.getX());
+		this.maxY = Math.max(this.maxY, pos.getY());
+		this.maxZ = Math.max(this.maxZ, pos.getZ());
+	}
+
+	/**
+	 * Gets the entities whose bounding box intersects the given area, like {@link Level#getEntities(Entity, AABB)}.
+	 * The area must be the movement area of one of the blocks of this group.
+	 *
+	 * @param level The level.
+	 * @param area  The area.
+	 * @return The entities.
+	 */
+	public List<Entity> getEntities(Level level, AABB area) {
+		long time = level.getGameTime();
+		if (this.entities == null || this.entitiesTime != time) {
+			this.entities = level.getEntities((Entity) null, this.area);
+			this.entitiesTime = time;
+		}
+
+		if (this.entities.size() > MAX_SHARED_ENTITIES)
+			return level.getEntities((Entity) null, area);
+
+		List<Entity> list = null;
+		for (Entity entity : this.entities) {
+			// Pushed entities might have been moved or removed since the query
+			if (!entity.isRemoved() && entity.getBoundingBox().intersects(area)) {
+				if (list == null)
+					list = new ArrayList<>();
+				list.add(entity);
+			}
+		}
+		return list == null ? Collections.emptyList() : list;
+	}
+
+	/**
+	 * Starts a new group.
+	 * Moving blocks created until {@link #end()} is called join it.
+	 */
+	public static void begin() {
+		// Replaces a group left by a move that has thrown, it is never completed so its blocks use their own query
+		current = new MovingStructureGroup();
+	}
+
+	/**
+	 * Adds a moving block to the current group.
+	 *
+	 * @param pos The position of the moving block.
+	 * @return The current group, or null if no group was started.
+	 */
+	public static MovingStructureGroup join(BlockPos pos) {
+		MovingStructureGroup group = current;
+		if (group != null)
+			group.include(pos);
+		return group;
+	}
+
+	/**
+	 * Discards the current group without completing it.
+	 * Called at the start of each tick so a group left by a move that has thrown cannot collect other blocks.
+	 */
+	public static void discard() {
+		current = null;
+	}
+
+	/**
+	 * Ends the current group.
+	 */
+	public static void end() {
+		MovingStructureGroup group = current;
+		current = null;
+		if (group != null && group.minX <= group.maxX) {
+			group.area = new AABB(group.minX - MARGIN, group.minY - MARGIN, group.minZ - MARGIN,
+					group.maxX + 1 + MARGIN, group.maxY + 1 + MARGIN, group.maxZ + 1 + MARGIN);
+		}
+	}
+
+	/**
+	 * Gets whether this group is complete and can be used to query entities.
+	 * The area is only computed once no block can join anymore.
+	 *
+	 * @return Whether this group is complete.
+	 */
+	public boolean isComplete() {
+		return this.area != null;
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2018-2022 Hugo Dupanloup (Yeregorix)
+ * Copyright (c) 2018-2026 Hugo Dupanloup (Yeregorix)
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -22,27 +22,93 @@
 
 package net.smoofyuniverse.superpiston.mixin.block;
 
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.server.level.ServerChunkCache;
 import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.piston.PistonBaseBlock;
 import net.minecraft.world.level.block.piston.PistonStructureResolver;
 import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.material.PushReaction;
+import net.smoofyuniverse.superpiston.SuperPiston;
+import net.smoofyuniverse.superpiston.config.world.WorldConfig.BudgetPolicy;
+import net.smoofyuniverse.superpiston.config.world.WorldConfig.Resolved;
 import net.smoofyuniverse.superpiston.impl.internal.InternalStructureResolver;
+import net.smoofyuniverse.superpiston.impl.internal.InternalWorld;
+import net.smoofyuniverse.superpiston.impl.metrics.ResolveTrace;
+import net.smoofyuniverse.superpiston.impl.metrics.SlowResolveSampler;
+import net.smoofyuniverse.superpiston.impl.moving.MovingStructureGroup;
+import org.spongepowered.api.world.server.ServerWorld;
+import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.Redirect;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
-
-import java.util.Set;
+import org.spongepowered.common.util.Constants;
 
 @Mixin(PistonBaseBlock.class)
 public abstract class PistonBaseBlockMixin {
-	private Set<BlockPos> blocksToRefresh;
+	@Final
+	@Shadow
+	private boolean isSticky;
+
+	private LongSet blocksToRefresh;
+	private InternalStructureResolver tracedResolver;
+	private long refreshNanos;
+
+	@Redirect(method = "checkIfExtend", at = @At(value = "INVOKE", target = "Lnet/minecraft/world/level/block/piston/PistonStructureResolver;resolve()Z"))
+	public boolean onExtendResolve(PistonStructureResolver resolver, Level level, BlockPos pos, BlockState state) {
+		// The event is scheduled anyway and the structure will be resolved again when it is no longer deferred
+		if (level instanceof ServerLevel) {
+			Resolved config = SuperPiston.get().getConfig((ServerWorld) level);
+			org.spongepowered.api.util.Direction direction = Constants.DirectionFunctions.getFor(state.getValue(PistonBaseBlock.FACING));
+			if (isDeferred((ServerLevel) level, config, pos) || isHugeDeferred((ServerLevel) level, config, pos, direction, direction))
+				return true;
+		}
+		InternalStructureResolver internal = (InternalStructureResolver) resolver;
+		internal.allowHugeStructure();
+		boolean moveable = resolver.resolve();
+		offerTrace(internal.takeTrace(0));
+		// The event is deferred until the huge structure is calculated
+		return moveable || internal.isWaitingForHugeStructure();
+	}
+
+	@Inject(method = "triggerEvent", at = @At("HEAD"), cancellable = true)
+	public void onTriggerEvent(BlockState state, Level level, BlockPos pos, int type, int data, CallbackInfoReturnable<Boolean> cir) {
+		// Only extensions and sticky retractions resolve a structure
+		if ((type == 0 || type == 1 && this.isSticky) && level instanceof ServerLevel) {
+			org.spongepowered.api.util.Direction direction = Constants.DirectionFunctions.getFor(Direction.from3DDataValue(data));
+			org.spongepowered.api.util.Direction movement = type == 0 ? direction : direction.opposite();
+			Resolved config = SuperPiston.get().getConfig((ServerWorld) level);
+			if (isHugeDeferred((ServerLevel) level, config, pos, direction, movement)) {
+				// The job expires after the same number of ticks
+				((InternalWorld) level).getCalculationBudget().defer(config, pos, state.getBlock(), type, data, config.hugeMaxTicks + 1);
+				cir.setReturnValue(false);
+			} else if (isDeferred((ServerLevel) level, config, pos)) {
+				((InternalWorld) level).getCalculationBudget().defer(config, pos, state.getBlock(), type, data, config.budgetDeferMaxTicks);
+				cir.setReturnValue(false);
+
+				// The event runs in a later tick, which leaves time to calculate the structure off the main thread
+				if (config.speculation)
+					((InternalWorld) level).getStructureSpeculator().submit(config, pos, direction, movement);
+			}
+		}
+	}
+
+	private static boolean isDeferred(ServerLevel level, Resolved config, BlockPos pos) {
+		return config.budgetPolicy == BudgetPolicy.DEFER && config.hasBudget()
+				&& ((InternalWorld) level).getCalculationBudget().isExhausted(config, ChunkPos.asLong(pos));
+	}
+
+	private static boolean isHugeDeferred(ServerLevel level, Resolved config, BlockPos pos, org.spongepowered.api.util.Direction direction, org.spongepowered.api.util.Direction movement) {
+		return config.hugeStructures && ((InternalWorld) level).getHugeStructureJobs().shouldDefer(config, pos.asLong(), direction, movement);
+	}
 
 	@Redirect(method = "triggerEvent", at = @At(value = "INVOKE", target = "Lnet/minecraft/world/level/block/state/BlockState;getPistonPushReaction()Lnet/minecraft/world/level/material/PushReaction;"))
 	public PushReaction alwaysPushNormal(BlockState stateIn, BlockState state, Level level, BlockPos pos, int id, int param) {
@@ -56,23 +122,54 @@ public abstract class PistonBaseBlockMixin {
 
 	@Redirect(method = "moveBlocks", at = @At(value = "INVOKE", target = "Lnet/minecraft/world/level/block/piston/PistonStructureResolver;resolve()Z"))
 	public boolean onMoveResolve(PistonStructureResolver resolver) {
+		InternalStructureResolver internal = (InternalStructureResolver) resolver;
 		if (resolver.resolve()) {
-			this.blocksToRefresh = ((InternalStructureResolver) resolver).resolveBlocksToRefresh();
+			boolean traced = internal.isTraced();
+			long startTime = traced ? System.nanoTime() : 0;
+			this.blocksToRefresh = internal.resolveBlocksToRefresh();
+			if (traced) {
+				this.tracedResolver = internal;
+				this.refreshNanos = System.nanoTime() - startTime;
+			}
 			return true;
 		}
+		offerTrace(internal.takeTrace(0));
 		return false;
 	}
 
+	@Inject(method = "moveBlocks", at = @At("HEAD"))
+	public void onMoveStart(Level level, BlockPos piston, Direction facing, boolean extending, CallbackInfoReturnable<Boolean> cir) {
+		if (level instanceof ServerLevel && SuperPiston.get().getConfig((ServerWorld) level).groupMovingBlocks)
+			MovingStructureGroup.begin();
+	}
+
 	@Inject(method = "moveBlocks", at = @At("RETURN"))
 	public void onMoveEnd(Level level, BlockPos piston, Direction facing, boolean extending, CallbackInfoReturnable<Boolean> cir) {
+		MovingStructureGroup.end();
+
 		if (this.blocksToRefresh != null) {
-			if (level instanceof ServerLevel) {
+			long startTime = this.tracedResolver == null ? 0 : System.nanoTime();
+			if (level instanceof ServerLevel && !this.blocksToRefresh.isEmpty()) {
 				ServerChunkCache cache = ((ServerLevel) level).getChunkSource();
-				for (BlockPos pos : this.blocksToRefresh) {
-					cache.blockChanged(pos);
-				}
+				BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+				LongIterator it = this.blocksToRefresh.iterator();
+				while (it.hasNext())
+					cache.blockChanged(pos.set(it.nextLong()));
 			}
 			this.blocksToRefresh = null;
+
+			if (this.tracedResolver != null) {
+				offerTrace(this.tracedResolver.takeTrace(this.refreshNanos + System.nanoTime() - startTime));
+				this.tracedResolver = null;
+			}
+		}
+	}
+
+	private static void offerTrace(ResolveTrace trace) {
+		if (trace != null) {
+			SlowResolveSampler sampler = SuperPiston.get().getSlowResolveSampler();
+			if (sampler != null)
+				sampler.offer(trace);
 		}
 	}
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2018-2022 Hugo Dupanloup (Yeregorix)
+ * Copyright (c) 2018-2026 Hugo Dupanloup (Yeregorix)
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -22,16 +22,34 @@
 
 package net.smoofyuniverse.superpiston.mixin.block;
 
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
 import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.piston.PistonStructureResolver;
 import net.smoofyuniverse.superpiston.SuperPiston;
 import net.smoofyuniverse.superpiston.api.structure.PistonStructure;
 import net.smoofyuniverse.superpiston.api.structure.calculator.DefaultStructureCalculator;
+import net.smoofyuniverse.superpiston.api.structure.calculator.PackedStructureCalculator;
 import net.smoofyuniverse.superpiston.api.structure.calculator.PistonStructureCalculator;
+import net.smoofyuniverse.superpiston.config.world.WorldConfig.Resolved;
+import net.smoofyuniverse.superpiston.impl.budget.CalculationBudget;
+import net.smoofyuniverse.superpiston.impl.cache.HugeStructureJobs;
+import net.smoofyuniverse.superpiston.impl.cache.StructureCache;
+import net.smoofyuniverse.superpiston.impl.cache.StructureSpeculator;
+import net.smoofyuniverse.superpiston.impl.calculator.CalculatorPool;
+import net.smoofyuniverse.superpiston.impl.calculator.SuperPistonStructureCalculator;
+import net.smoofyuniverse.superpiston.impl.event.ListenerDetector;
 import net.smoofyuniverse.superpiston.impl.event.PostStructureCalculationEvent;
 import net.smoofyuniverse.superpiston.impl.event.PreStructureCalculationEvent;
 import net.smoofyuniverse.superpiston.impl.internal.InternalStructureResolver;
+import net.smoofyuniverse.superpiston.impl.internal.InternalWorld;
+import net.smoofyuniverse.superpiston.impl.metrics.ResolveMetrics;
+import net.smoofyuniverse.superpiston.impl.metrics.ResolveTrace;
+import net.smoofyuniverse.superpiston.impl.metrics.SlowResolveSampler;
 import org.spongepowered.api.Sponge;
 import org.spongepowered.api.block.BlockSnapshot;
 import org.spongepowered.api.event.Cause;
@@ -46,13 +64,10 @@ import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 import org.spongepowered.common.util.Constants;
-import org.spongepowered.common.util.VecHelper;
 import org.spongepowered.math.vector.Vector3i;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 @Mixin(PistonStructureResolver.class)
 public abstract class PistonStructureResolverMixin implements InternalStructureResolver {
@@ -73,7 +88,12 @@ public abstract class PistonStructureResolverMixin implements InternalStructureR
 
 	private Direction direction, movement;
 	private BlockSnapshot piston;
-	private boolean resolveCustom = true;
+	private long pistonPos;
+	private boolean resolveCustom = true, vanillaEquivalent, hugeStructureAllowed, waitingForHugeStructure;
+	private boolean traced;
+	private String traceSource;
+	private int traceBlocks, traceDestroyed;
+	private long traceCalculationNanos, traceEventNanos;
 
 	@Inject(method = "resolve", at = @At("HEAD"), cancellable = true)
 	public void onResolve(CallbackInfoReturnable<Boolean> cir) {
@@ -83,55 +103,249 @@ public abstract class PistonStructureResolverMixin implements InternalStructureR
 
 	@Inject(method = "<init>", at = @At("RETURN"))
 	public void onInit(Level level, BlockPos pos, net.minecraft.core.Direction pistonDirection, boolean extending, CallbackInfo ci) {
-		this.piston = ((ServerWorld) this.level).createSnapshot(pos.getX(), pos.getY(), pos.getZ());
+		this.pistonPos = pos.asLong();
 		this.direction = Constants.DirectionFunctions.getFor(pistonDirection);
 		this.movement = extending ? this.direction : this.direction.opposite();
 	}
 
+	// Only created when exposed to other plugins
+	private BlockSnapshot getPiston() {
+		if (this.piston == null)
+			this.piston = ((ServerWorld) this.level).createSnapshot(BlockPos.getX(this.pistonPos), BlockPos.getY(this.pistonPos), BlockPos.getZ(this.pistonPos));
+		return this.piston;
+	}
+
+	private Vector3i getPistonPosition() {
+		return new Vector3i(BlockPos.getX(this.pistonPos), BlockPos.getY(this.pistonPos), BlockPos.getZ(this.pistonPos));
+	}
+
 	private boolean resolveCustom() {
 		this.toPush.clear();
 		this.toDestroy.clear();
+		this.traced = false;
+		this.waitingForHugeStructure = false;
+		boolean hugeStructureAllowed = this.hugeStructureAllowed;
+		this.hugeStructureAllowed = false;
 
-		Cause cause = Sponge.server().causeStackManager().currentCause();
+		SuperPiston plugin = SuperPiston.get();
+		ResolveMetrics metrics = plugin.getGlobalConfig().metrics.enabled ? ((InternalWorld) this.level).getResolveMetrics() : null;
+		SlowResolveSampler sampler = plugin.getSlowResolveSampler();
+		if (metrics != null)
+			metrics.resolves.increment();
 
-		PreStructureCalculationEvent preEvent = new PreStructureCalculationEvent(
-				cause, (ServerWorld) this.level, this.piston, this.direction, this.movement,
-				new DefaultStructureCalculator((ServerWorld) this.level, this.piston, this.direction, this.movement));
+		Resolved worldConfig = plugin.getConfig((ServerWorld) this.level);
+		CalculationBudget budget = null;
+		long chunk = 0;
+		if (worldConfig.hasBudget()) {
+			budget = ((InternalWorld) this.level).getCalculationBudget();
+			chunk = ChunkPos.asLong(BlockPos.getX(this.pistonPos) >> 4, BlockPos.getZ(this.pistonPos) >> 4);
+			if (budget.isExhausted(worldConfig, chunk)) {
+				if (metrics != null)
+					metrics.throttled.increment();
+				return false;
+			}
+		}
 
-		Sponge.eventManager().post(preEvent);
+		boolean timed = budget != null || metrics != null || sampler != null;
+		long startTime = timed ? System.nanoTime() : 0;
 
-		if (preEvent.isCancelled())
-			return false;
+		// Events are skipped when only our own listener would receive them
+		ListenerDetector listeners = plugin.getListenerDetector();
+		listeners.update(((ServerLevel) this.level).getServer().getTickCount());
+		boolean postPre = listeners.isPreListened(), postPost = listeners.isPostListened();
+
+		Cause cause = postPre || postPost ? Sponge.server().causeStackManager().currentCause() : null;
+
+		PistonStructureCalculator calculator;
+		CalculatorPool.Pooled pooled = null;
+		long preEventTime;
+		if (postPre) {
+			BlockSnapshot piston = getPiston();
+			PreStructureCalculationEvent preEvent = new PreStructureCalculationEvent(
+					cause, (ServerWorld) this.level, piston, this.direction, this.movement,
+					new DefaultStructureCalculator((ServerWorld) this.level, piston, this.direction, this.movement));
+
+			Sponge.eventManager().post(preEvent);
+
+			preEventTime = timed ? System.nanoTime() : 0;
+			if (metrics != null)
+				metrics.preEventNanos.record(preEventTime - startTime);
+
+			if (preEvent.isCancelled()) {
+				if (metrics != null)
+					metrics.cancelled.increment();
+				return false;
+			}
+
+			calculator = preEvent.calculator();
+		} else {
+			// Nothing else can hold a reference to the calculator unless it is exposed by the Post event
+			if (postPost) {
+				calculator = new SuperPistonStructureCalculator((ServerWorld) this.level, getPiston(), this.direction, this.movement, worldConfig);
+			} else {
+				pooled = ((InternalWorld) this.level).getCalculatorPool().acquire(getPistonPosition(), this.direction, this.movement, worldConfig);
+				calculator = pooled.calculator();
+			}
+			preEventTime = startTime;
+		}
+
+		// Optimizations are bypassed if another plugin has replaced our calculator
+		SuperPistonStructureCalculator superCalculator = calculator.getClass() == SuperPistonStructureCalculator.class ? (SuperPistonStructureCalculator) calculator : null;
+
+		StructureCache cache = null;
+		Resolved config = null;
+		int maxBlocks = 0;
+		if (superCalculator != null) {
+			config = superCalculator.config;
+			maxBlocks = superCalculator.getMaxBlocks();
+			// The calculator exposed by the Post event must have calculated the structure itself
+			if (config.cacheSize > 0 && !postPost)
+				cache = ((InternalWorld) this.level).getStructureCache();
+		}
 
-		PistonStructureCalculator calculator = preEvent.calculator();
 		PistonStructure structure = null;
-		try {
-			structure = calculator.calculateStructure();
-		} catch (Exception e) {
-			SuperPiston.LOGGER.error("Unexpected exception has occurred during structure calculation", e);
+		this.vanillaEquivalent = false;
+		int readBlocks = 0;
+
+		// A huge structure takes precedence over the cached result of the regular calculation
+		HugeStructureJobs huge = config != null && config.hugeStructures ? ((InternalWorld) this.level).getHugeStructureJobs() : null;
+		boolean hugeJob = huge != null && huge.hasJob(this.pistonPos, this.direction, this.movement);
+		StructureSpeculator.Result hugeResult = hugeJob ? huge.take(config, this.pistonPos, this.direction, this.movement) : null;
+
+		StructureCache.Entry cached = hugeResult != null || cache == null ? null : cache.get(config, maxBlocks, this.pistonPos, this.direction, this.movement);
+		StructureSpeculator speculator = config != null && config.speculation ? ((InternalWorld) this.level).getStructureSpeculator() : null;
+		StructureSpeculator.Result speculated = null;
+		if (speculator != null) {
+			if (hugeResult != null || cached != null || postPost)
+				speculator.discard(this.pistonPos, this.direction, this.movement);
+			else
+				speculated = speculator.take(config, maxBlocks, this.pistonPos, this.direction, this.movement);
 		}
 
-		if (structure == null)
-			return false;
+		String source;
+		if (hugeResult != null) {
+			source = "huge";
+			structure = hugeResult.structure();
+			this.vanillaEquivalent = hugeResult.vanillaEquivalent();
+		} else if (cached != null) {
+			source = "cache";
+			structure = cached.structure();
+			this.vanillaEquivalent = cached.isVanillaEquivalent();
+		} else if (speculated != null) {
+			source = "speculation";
+			structure = speculated.structure();
+			this.vanillaEquivalent = speculated.vanillaEquivalent();
+			if (cache != null)
+				cache.put(config, maxBlocks, this.pistonPos, this.direction, this.movement, structure, this.vanillaEquivalent, speculated.readStates());
+		} else {
+			source = calculator.getClass().getName();
+			try {
+				structure = calculator.calculateStructure();
+			} catch (Exception e) {
+				SuperPiston.LOGGER.error("Unexpected exception has occurred during structure calculation", e);
+				if (metrics != null)
+					metrics.exceptions.increment();
+			}
+
+			readBlocks = countReadBlocks(calculator, structure);
+
+			if (structure != null) {
+				if (superCalculator != null)
+					this.vanillaEquivalent = superCalculator.isVanillaEquivalent(structure);
+
+				if (calculator instanceof PackedStructureCalculator) {
+					PackedStructureCalculator packed = (PackedStructureCalculator) calculator;
+					if (SuperPiston.LOGGER.isDebugEnabled())
+						SuperPiston.LOGGER.debug("Block cache: {} hits, {} misses", packed.getCacheHits(), packed.getCacheMisses());
+					// Synthetic states would be compared to the world when validating the entry
+					if (cache != null && !(huge != null && packed.isLimitReached()) && !superCalculator.hasSyntheticStates())
+						cache.put(config, maxBlocks, this.pistonPos, this.direction, this.movement, structure, this.vanillaEquivalent, packed.getReadStates());
+				}
+			}
 
-		PostStructureCalculationEvent postEvent = new PostStructureCalculationEvent(
-				cause, (ServerWorld) this.level, this.piston, this.direction, this.movement,
-				calculator, structure);
+			// Each trigger gets a single huge calculation, a failed one is not submitted again
+			// A structure only exceeding the adaptive limit is not promoted, the server is under load
+			if (huge != null && hugeStructureAllowed && !hugeJob && maxBlocks >= config.maxBlocks
+					&& structure != null && !structure.isMoveable() && superCalculator.isLimitReached()) {
+				huge.submit(config, this.pistonPos, this.direction, this.movement);
+				this.waitingForHugeStructure = true;
+			}
+		}
 
-		Sponge.eventManager().post(postEvent);
+		long calculationTime = timed ? System.nanoTime() : 0;
+		if (budget != null)
+			budget.charge(chunk, calculationTime - startTime, readBlocks);
+		if (metrics != null) {
+			metrics.calculationNanos.record(calculationTime - preEventTime);
+			metrics.blockLookups.record(readBlocks);
+		}
 
-		if (postEvent.isCancelled())
+		if (structure == null) {
+			if (pooled != null)
+				((InternalWorld) this.level).getCalculatorPool().release(pooled);
 			return false;
+		}
 
-		for (Vector3i pos : structure.getBlocksToMove())
-			this.toPush.add(VecHelper.toBlockPos(pos));
+		if (metrics != null && structure.isMoveable()) {
+			metrics.structureSize.record(structure.getBlocksToMoveCount());
+			metrics.destroySize.record(structure.getBlocksToDestroyCount());
+		}
 
-		for (Vector3i pos : structure.getBlocksToDestroy())
-			this.toDestroy.add(VecHelper.toBlockPos(pos));
+		long postEventTime = calculationTime;
+		if (postPost) {
+			PostStructureCalculationEvent postEvent = new PostStructureCalculationEvent(
+					cause, (ServerWorld) this.level, getPiston(), this.direction, this.movement,
+					calculator, structure);
+
+			Sponge.eventManager().post(postEvent);
+
+			postEventTime = timed ? System.nanoTime() : 0;
+			if (metrics != null)
+				metrics.postEventNanos.record(postEventTime - calculationTime);
+
+			if (postEvent.isCancelled()) {
+				if (metrics != null)
+					metrics.cancelled.increment();
+				return false;
+			}
+		}
+
+		// Packed positions are converted directly without creating vectors
+		int moveCount = structure.getBlocksToMoveCount();
+		if (this.toPush instanceof ArrayList)
+			((ArrayList<BlockPos>) this.toPush).ensureCapacity(moveCount);
+		for (int i = 0; i < moveCount; i++)
+			this.toPush.add(BlockPos.of(structure.getPackedBlockToMove(i)));
+
+		int destroyCount = structure.getBlocksToDestroyCount();
+		for (int i = 0; i < destroyCount; i++)
+			this.toDestroy.add(BlockPos.of(structure.getPackedBlockToDestroy(i)));
+
+		if (metrics != null)
+			(structure.isMoveable() ? metrics.moveable : metrics.blocked).increment();
+
+		// The trace itself is only created once the resolve is known to be slow
+		if (sampler != null) {
+			this.traced = true;
+			this.traceSource = source;
+			this.traceBlocks = structure.getBlocksToMoveCount();
+			this.traceDestroyed = structure.getBlocksToDestroyCount();
+			this.traceCalculationNanos = calculationTime - preEventTime;
+			this.traceEventNanos = (preEventTime - startTime) + (postEventTime - calculationTime);
+		}
+
+		if (pooled != null)
+			((InternalWorld) this.level).getCalculatorPool().release(pooled);
 
 		return structure.isMoveable();
 	}
 
+	private static int countReadBlocks(PistonStructureCalculator calculator, PistonStructure structure) {
+		if (calculator instanceof PackedStructureCalculator)
+			return ((PackedStructureCalculator) calculator).getCacheMisses();
+		return structure == null ? 0 : structure.getBlocksToMoveCount() + structure.getBlocksToDestroyCount();
+	}
+
 	private void resolveVanilla() {
 		this.resolveCustom = false;
 		resolve();
@@ -142,8 +356,41 @@ public abstract class PistonStructureResolverMixin implements InternalStructureR
 	public abstract boolean resolve();
 
 	@Override
-	public Set<BlockPos> resolveBlocksToRefresh() {
-		Set<BlockPos> toRefresh = new HashSet<>();
+	public boolean isWaitingForHugeStructure() {
+		return this.waitingForHugeStructure;
+	}
+
+	@Override
+	public void allowHugeStructure() {
+		this.hugeStructureAllowed = true;
+	}
+
+	@Override
+	public boolean isTraced() {
+		return this.traced;
+	}
+
+	@Override
+	public ResolveTrace takeTrace(long refreshNanos) {
+		if (!this.traced)
+			return null;
+		this.traced = false;
+
+		SlowResolveSampler sampler = SuperPiston.get().getSlowResolveSampler();
+		if (sampler == null || this.traceCalculationNanos + this.traceEventNanos + refreshNanos < sampler.getThresholdNanos())
+			return null;
+
+		return new ResolveTrace(((ServerWorld) this.level).key().asString(),
+				BlockPos.getX(this.pistonPos), BlockPos.getY(this.pistonPos), BlockPos.getZ(this.pistonPos),
+				this.direction, this.movement, this.traceSource, this.traceBlocks, this.traceDestroyed,
+				this.traceCalculationNanos, this.traceEventNanos, refreshNanos);
+	}
+
+	@Override
+	public LongSet resolveBlocksToRefresh() {
+		// Clients calculate the same structure
+		if (this.vanillaEquivalent)
+			return LongSets.EMPTY_SET;
 
 		// Backup custom blocks
 		List<BlockPos> toPushCustom = this.toPush;
@@ -154,18 +401,30 @@ public abstract class PistonStructureResolverMixin implements InternalStructureR
 		// Resolve vanilla blocks
 		resolveVanilla();
 
-		// Difference between blocks updated by the client and blocks updated by the server
-		for (BlockPos pos : this.toPush) {
-			toRefresh.add(pos);
-			toRefresh.add(pos.relative(this.pushDirection));
-		}
-		toRefresh.addAll(this.toDestroy);
+		// Blocks updated by the server
+		LongSet updated = new LongOpenHashSet(toPushCustom.size() * 2 + toDestroyCustom.size());
 		for (BlockPos pos : toPushCustom) {
-			toRefresh.remove(pos);
-			toRefresh.remove(pos.relative(this.pushDirection));
+			long p = pos.asLong();
+			updated.add(p);
+			updated.add(BlockPos.offset(p, this.pushDirection));
+		}
+		for (BlockPos pos : toDestroyCustom)
+			updated.add(pos.asLong());
+
+		// Blocks updated by the client but not by the server
+		LongSet toRefresh = new LongOpenHashSet();
+		for (BlockPos pos : this.toPush) {
+			long p = pos.asLong();
+			if (!updated.contains(p))
+				toRefresh.add(p);
+			p = BlockPos.offset(p, this.pushDirection);
+			if (!updated.contains(p))
+				toRefresh.add(p);
 		}
-		for (BlockPos pos : toDestroyCustom) {
-			toRefresh.remove(pos);
+		for (BlockPos pos : this.toDestroy) {
+			long p = pos.asLong();
+			if (!updated.contains(p))
+				toRefresh.add(p);
 		}
 
 		// Restore custom blocks
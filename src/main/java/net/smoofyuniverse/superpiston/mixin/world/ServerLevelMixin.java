@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2026 Hugo Dupanloup (Yeregorix)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.smoofyuniverse.superpiston.mixin.world;
+
+import net.minecraft.server.level.ServerLevel;
+import net.smoofyuniverse.superpiston.impl.budget.CalculationBudget;
+import net.smoofyuniverse.superpiston.impl.cache.HugeStructureJobs;
+import net.smoofyuniverse.superpiston.impl.cache.StructureCache;
+import net.smoofyuniverse.superpiston.impl.cache.StructureSpeculator;
+import net.smoofyuniverse.superpiston.impl.calculator.CalculatorPool;
+import net.smoofyuniverse.superpiston.impl.internal.InternalWorld;
+import net.smoofyuniverse.superpiston.impl.metrics.ResolveMetrics;
+import net.smoofyuniverse.superpiston.impl.moving.MovingStructureGroup;
+import org.spongepowered.api.world.server.ServerWorld;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import java.util.function.BooleanSupplier;
+
+@Mixin(ServerLevel.class)
+public abstract class ServerLevelMixin implements InternalWorld {
+	private StructureCache structureCache;
+	private StructureSpeculator structureSpeculator;
+	private CalculationBudget calculationBudget;
+	private final ResolveMetrics resolveMetrics = new ResolveMetrics();
+	private CalculatorPool calculatorPool;
+	private HugeStructureJobs hugeStructureJobs;
+
+	@Inject(method = "tick", at = @At("HEAD"))
+	public void onTick(BooleanSupplier hasTimeLeft, CallbackInfo ci) {
+		MovingStructureGroup.discard();
+		if (this.calculationBudget != null)
+			this.calculationBudget.startTick();
+		if (this.hugeStructureJobs != null)
+			this.hugeStructureJobs.startTick();
+	}
+
+	@Override
+	public StructureCache getStructureCache() {
+		if (this.structureCache == null)
+			this.structureCache = new StructureCache((ServerLevel) (Object) this);
+		return this.structureCache;
+	}
+
+	@Override
+	public StructureSpeculator getStructureSpeculator() {
+		if (this.structureSpeculator == null)
+			this.structureSpeculator = new StructureSpeculator((ServerLevel) (Object) this);
+		return this.structureSpeculator;
+	}
+
+	@Override
+	public CalculationBudget getCalculationBudget() {
+		if (this.calculationBudget == null)
+			this.calculationBudget = new CalculationBudget((ServerLevel) (Object) this);
+		return this.calculationBudget;
+	}
+
+	@Override
+	public ResolveMetrics getResolveMetrics() {
+		return this.resolveMetrics;
+	}
+
+	@Override
+	public CalculatorPool getCalculatorPool() {
+		if (this.calculatorPool == null)
+			this.calculatorPool = new CalculatorPool((ServerWorld) (Object) this);
+		return this.calculatorPool;
+	}
+
+	@Override
+	public HugeStructureJobs getHugeStructureJobs() {
+		if (this.hugeStructureJobs == null)
+			this.hugeStructureJobs = new HugeStructureJobs((ServerLevel) (Object) this);
+		return this.hugeStructureJobs;
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2018-2022 Hugo Dupanloup (Yeregorix)
+ * Copyright (c) 2018-2026 Hugo Dupanloup (Yeregorix)
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -31,11 +31,16 @@ import org.spongepowered.api.registry.RegistryTypes;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
-import java.util.stream.Stream;
+import java.util.stream.IntStream;
 
 public class RegistryUtil {
+	private static final Pattern BACKREFERENCE = Pattern.compile("\\\\(\\d|k<)");
+	private static final Pattern NAMED_GROUP = Pattern.compile("\\(\\?<[^=!]");
+	private static final Map<String, int[]> matchCache = new ConcurrentHashMap<>();
+	private static volatile StateTable stateTable;
 
 	public static <V> Map<BlockState, V> resolveBlockStates(Map<String, V> map) {
 		Registry<BlockType> blockTypeRegistry = RegistryTypes.BLOCK_TYPE.get();
@@ -44,6 +49,11 @@ public class RegistryUtil {
 		Map<BlockState, V> states = new HashMap<>();
 		Set<String> unknownKeys = new HashSet<>(), invalidPatterns = new HashSet<>();
 
+		// Consecutive patterns with the same sign and value are matched together
+		List<String> pendingPatterns = new ArrayList<>();
+		boolean pendingNegate = false;
+		V pendingValue = null;
+
 		for (Entry<String, V> entry : map.entrySet()) {
 			String key = entry.getKey();
 			V value = entry.getValue();
@@ -55,25 +65,34 @@ public class RegistryUtil {
 			if (key.startsWith("regex!")) {
 				key = key.substring(6);
 
-				Pattern pattern;
 				try {
-					pattern = Pattern.compile(key, Pattern.CASE_INSENSITIVE);
+					Pattern.compile(key, Pattern.CASE_INSENSITIVE);
 				} catch (PatternSyntaxException e) {
 					invalidPatterns.add(key);
 					continue;
 				}
 
-				Stream<BlockState> matchedStates = blockTypeRegistry.stream()
-						.flatMap(type -> type.validStates().stream())
-						.filter(state -> pattern.matcher(state.asString()).matches());
+				if (!pendingPatterns.isEmpty() && (negate != pendingNegate || !Objects.equals(value, pendingValue) || !canCombine(key))) {
+					applyPatterns(states, pendingPatterns, pendingNegate, pendingValue);
+					pendingPatterns.clear();
+				}
 
-				if (negate)
-					matchedStates.forEach(states::remove);
-				else
-					matchedStates.forEach(state -> states.put(state, value));
+				pendingPatterns.add(key);
+				pendingNegate = negate;
+				pendingValue = value;
+
+				if (!canCombine(key)) {
+					applyPatterns(states, pendingPatterns, negate, value);
+					pendingPatterns.clear();
+				}
 				continue;
 			}
 
+			if (!pendingPatterns.isEmpty()) {
+				applyPatterns(states, pendingPatterns, pendingNegate, pendingValue);
+				pendingPatterns.clear();
+			}
+
 			try {
 				Optional<BlockType> type = blockTypeRegistry.findValue(ResourceKey.resolve(key));
 				if (type.isPresent()) {
@@ -100,6 +119,9 @@ public class RegistryUtil {
 			unknownKeys.add(key);
 		}
 
+		if (!pendingPatterns.isEmpty())
+			applyPatterns(states, pendingPatterns, pendingNegate, pendingValue);
+
 		if (!unknownKeys.isEmpty()) {
 			StringBuilder sb = new StringBuilder();
 			sb.append("Unknown block states:");
@@ -118,4 +140,89 @@ public class RegistryUtil {
 
 		return states;
 	}
+
+	private static <V> void applyPatterns(Map<BlockState, V> states, List<String> patterns, boolean negate, V value) {
+		String regex;
+		if (patterns.size() == 1) {
+			regex = patterns.get(0);
+		} else {
+			StringJoiner joiner = new StringJoiner("|");
+			for (String pattern : patterns)
+				joiner.add("(?:" + pattern + ")");
+			regex = joiner.toString();
+		}
+
+		int[] indexes;
+		try {
+			indexes = matchStates(regex);
+		} catch (PatternSyntaxException e) {
+			// Each pattern is valid on its own, match them separately
+			for (String pattern : patterns)
+				applyPatterns(states, Collections.singletonList(pattern), negate, value);
+			return;
+		}
+
+		BlockState[] tableStates = getStateTable().states;
+		for (int i : indexes) {
+			if (negate)
+				states.remove(tableStates[i]);
+			else
+				states.put(tableStates[i], value);
+		}
+	}
+
+	// Groups would be renumbered when combining patterns, and a group name can only be declared once
+	private static boolean canCombine(String pattern) {
+		return !BACKREFERENCE.matcher(pattern).find() && !NAMED_GROUP.matcher(pattern).find();
+	}
+
+	/**
+	 * Finds the indexes in the state table of all block states matching the given pattern.
+	 * Results are cached until {@link #clearCache()} is called, so that the same pattern used in multiple worlds is only matched once.
+	 *
+	 * @param regex The pattern, case insensitive.
+	 * @return The indexes of matching states.
+	 */
+	public static int[] matchStates(String regex) {
+		return matchCache.computeIfAbsent(regex, k -> {
+			Pattern pattern = Pattern.compile(k, Pattern.CASE_INSENSITIVE);
+			String[] strings = getStateTable().strings;
+			return IntStream.range(0, strings.length).parallel()
+					.filter(i -> pattern.matcher(strings[i]).matches()).toArray();
+		});
+	}
+
+	/**
+	 * Clears cached pattern matches.
+	 * Should be called once all configurations have been resolved.
+	 */
+	public static void clearCache() {
+		matchCache.clear();
+	}
+
+	private static StateTable getStateTable() {
+		StateTable table = stateTable;
+		if (table == null) {
+			synchronized (RegistryUtil.class) {
+				table = stateTable;
+				if (table == null) {
+					table = new StateTable(RegistryTypes.BLOCK_TYPE.get());
+					stateTable = table;
+				}
+			}
+		}
+		return table;
+	}
+
+	// Block registry is frozen once the server is started
+	private static final class StateTable {
+		final BlockState[] states;
+		final String[] strings;
+
+		StateTable(Registry<BlockType> registry) {
+			this.states = registry.stream().flatMap(type -> type.validStates().stream()).toArray(BlockState[]::new);
+			this.strings = new String[this.states.length];
+			Arrays.parallelSetAll(this.strings, i -> this.states[i].asString());
+		}
+	}
 }